@@ -1,83 +1,220 @@
 package com.wyh;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.BitSet;
+import java.util.zip.GZIPInputStream;
 
 //答案检查器
 public class AnswerChecker {
+    // 每处理这么多行提交一次判分分块事件
+    private static final int EVENT_CHUNK_LINES = 64 * 1024;
 
+    /**
+     * 逐行判分；题目文件旁有判分校验文件（{@link GradingSidecar}）时，校验和一致的行直接比较答案，不解析表达式
+     */
     public static GradingResult grade(String exerciseFile, String answerFile) throws IOException {
-        List<String> exercises = Files.readAllLines(Paths.get(exerciseFile));
-        List<String> answers = Files.readAllLines(Paths.get(answerFile));
+        BitSet correct = new BitSet();
+        int lineNumber = 0;
+        int checkedBySidecar = 0;
+        JfrEvents.GradingChunkEvent chunk = new JfrEvents.GradingChunkEvent();
+        chunk.begin();
 
-        if (exercises.size() != answers.size()) {
-            throw new IllegalArgumentException("题目数量和答案数量不匹配");
-        }
+        // 两个文件逐行同步读取，不把整个文件读入内存；gzip 文件自动识别并流式解压
+        try (BufferedReader exercises = openReader(exerciseFile);
+             BufferedReader answers = openReader(answerFile);
+             GradingSidecar sidecar = GradingSidecar.open(Paths.get(exerciseFile))) {
+            boolean sidecarRemaining = sidecar != null;
+            while (true) {
+                String exerciseLine = exercises.readLine();
+                String answerLine = answers.readLine();
+                if (exerciseLine == null || answerLine == null) {
+                    if (exerciseLine != answerLine) {
+                        throw new IllegalArgumentException("题目数量和答案数量不匹配");
+                    }
+                    break;
+                }
+                lineNumber++;
+                if (lineNumber % EVENT_CHUNK_LINES == 1 && lineNumber > 1) {
+                    commitChunk(chunk, lineNumber - EVENT_CHUNK_LINES, lineNumber - 1, correct);
+                    chunk = new JfrEvents.GradingChunkEvent();
+                    chunk.begin();
+                }
+
+                String expectedAnswer = answerLine.trim();
 
-        List<Integer> correctIndices = new ArrayList<>();
-        List<Integer> wrongIndices = new ArrayList<>();
+                // 校验文件中的答案对应未修改的题目行时直接比较；记录读完后其余行都按完整解析判分
+                sidecarRemaining = sidecarRemaining && sidecar.next();
+                if (sidecarRemaining && sidecar.matches(exerciseLine)) {
+                    checkedBySidecar++;
+                    if (sidecar.answer().toString().equals(expectedAnswer)) {
+                        correct.set(lineNumber);
+                    }
+                    continue;
+                }
 
-        for (int i = 0; i < exercises.size(); i++) {
-            String exercise = exercises.get(i).trim();
-            String expectedAnswer = answers.get(i).trim();
+                String exercise = exerciseLine.trim();
 
-            // 移除末尾的等号并解析计算
-            if (exercise.endsWith("=")) {
-                exercise = exercise.substring(0, exercise.length() - 1).trim();
-            }
+                // 移除末尾的等号并解析计算
+                if (exercise.endsWith("=")) {
+                    exercise = exercise.substring(0, exercise.length() - 1).trim();
+                }
 
-            try {
+                // 无法计算的题目按错误处理
                 Fraction result = evaluateExpression(exercise);
-                if (result.toString().equals(expectedAnswer)) {
-                    correctIndices.add(i + 1); // 题目编号从1开始
-                } else {
-                    wrongIndices.add(i + 1);
+                if (result.isValid() && result.toString().equals(expectedAnswer)) {
+                    correct.set(lineNumber); // 题目编号从1开始
                 }
-            } catch (Exception e) {
-                wrongIndices.add(i + 1);
             }
         }
 
-        return new GradingResult(correctIndices, wrongIndices);
+        int chunkStart = lineNumber == 0 ? 1 : (lineNumber - 1) / EVENT_CHUNK_LINES * EVENT_CHUNK_LINES + 1;
+        commitChunk(chunk, chunkStart, lineNumber, correct);
+
+        return new GradingResult(correct, lineNumber, checkedBySidecar);
+    }
+
+    private static void commitChunk(JfrEvents.GradingChunkEvent chunk, int firstLine, int lastLine, BitSet correct) {
+        chunk.end();
+        if (chunk.shouldCommit()) {
+            chunk.firstLine = firstLine;
+            chunk.lines = lastLine - firstLine + 1;
+            chunk.correct = correct.get(firstLine, lastLine + 1).cardinality();
+            chunk.commit();
+        }
+    }
+
+    /**
+     * 打开文本文件，根据文件头魔数自动识别 gzip 压缩（包括多成员 gzip）
+     */
+    static BufferedReader openReader(String file) throws IOException {
+        InputStream in = new BufferedInputStream(Files.newInputStream(Paths.get(file)), 64 * 1024);
+        try {
+            in.mark(2);
+            int b1 = in.read();
+            int b2 = in.read();
+            in.reset();
+            if (b1 == 0x1f && b2 == 0x8b) {
+                in = new GZIPInputStream(in, 64 * 1024);
+            }
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024);
     }
 
     /**
-     * 简化的表达式求值（实际实现需要完整的解析器）
-     * @param expression
-     * @return
+     * 解析并计算题目表达式
+     * @param expression 去掉等号后的中缀表达式
+     * @return 计算结果，无法解析或计算时返回 Fraction.INVALID
      */
     private static Fraction evaluateExpression(String expression) {
-        // 这里应该实现完整的表达式解析和求值
-        // 由于复杂度，这里使用简化实现
-        return new Fraction(1);
+        return ExpressionParser.evaluate(expression);
     }
 
+    /**
+     * 判分结果，以位图记录每道题是否正确（第 i 位对应第 i 题），未置位的题目即为错误
+     */
     public static class GradingResult {
-        private final List<Integer> correct;
-        private final List<Integer> wrong;
+        private final BitSet correct;
+        private final int total;
+        private final int checkedBySidecar;
+
+        public GradingResult(BitSet correct, int total) {
+            this(correct, total, 0);
+        }
 
-        public GradingResult(List<Integer> correct, List<Integer> wrong) {
+        public GradingResult(BitSet correct, int total, int checkedBySidecar) {
             this.correct = correct;
-            this.wrong = wrong;
+            this.total = total;
+            this.checkedBySidecar = checkedBySidecar;
+        }
+
+        public int getCorrectCount() {
+            return correct.cardinality();
+        }
+
+        public int getWrongCount() {
+            return total - getCorrectCount();
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * 由判分校验文件直接核对、未解析表达式的题目数
+         */
+        public int getCheckedBySidecar() {
+            return checkedBySidecar;
+        }
+
+        public boolean isCorrect(int problemNumber) {
+            return correct.get(problemNumber);
         }
 
         public String toGradeString() {
-            return String.format("Correct: %d %s\nWrong: %d %s",
-                    correct.size(), formatIndices(correct),
-                    wrong.size(), formatIndices(wrong));
+            return toGradeString(false);
         }
 
-        private String formatIndices(List<Integer> indices) {
-            if (indices.isEmpty()) {
-                return "()";
+        public String toGradeString(boolean compressRanges) {
+            StringBuilder sb = new StringBuilder();
+            try {
+                writeTo(sb, compressRanges);
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // StringBuilder 不会抛出 IOException
             }
-            return "(" + indices.stream()
-                    .map(String::valueOf)
-                    .collect(Collectors.joining(", ")) + ")";
+            return sb.toString();
+        }
+
+        /**
+         * 直接从位图流式输出判分结果，不构造中间字符串
+         * @param compressRanges 为 true 时连续题号合并为区间，如 1-5000
+         */
+        public void writeTo(Appendable out, boolean compressRanges) throws IOException {
+            out.append("Correct: ").append(String.valueOf(getCorrectCount())).append(' ');
+            writeIndices(out, true, compressRanges);
+            out.append("\nWrong: ").append(String.valueOf(getWrongCount())).append(' ');
+            writeIndices(out, false, compressRanges);
+        }
+
+        private void writeIndices(Appendable out, boolean wantCorrect, boolean compressRanges) throws IOException {
+            out.append('(');
+            boolean first = true;
+            int i = next(1, wantCorrect);
+            while (i <= total) {
+                if (!first) {
+                    out.append(", ");
+                }
+                first = false;
+                out.append(String.valueOf(i));
+
+                int end = i;
+                if (compressRanges) {
+                    end = Math.min(total + 1, wantCorrect ? correct.nextClearBit(i) : nextSet(i)) - 1;
+                    if (end > i) {
+                        out.append('-').append(String.valueOf(end));
+                    }
+                }
+                i = next(end + 1, wantCorrect);
+            }
+            out.append(')');
+        }
+
+        private int next(int from, boolean wantCorrect) {
+            return wantCorrect ? nextSet(from) : correct.nextClearBit(from);
+        }
+
+        private int nextSet(int from) {
+            int i = correct.nextSetBit(from);
+            return i < 0 ? Integer.MAX_VALUE : i;
         }
     }
 }
@@ -0,0 +1,476 @@
+package com.wyh;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.function.Predicate;
+
+/**
+ * 按答案值索引的表达式表（按数值范围构建）
+ * 自底向上按运算符个数逐层构建：第 0 层为范围内的全部自然数和真分数，
+ * 第 k 层由运算符个数之和为 k-1 的两层子表达式组合而成，把每个可达的值映射到产生它的全部组合方式。
+ * 组合遵守生成器的约束：减法被减数不小于减数，除法除数非零且结果为真分数，运算中不溢出。
+ *
+ * 指定答案时先在对应层中筛选满足条件的值，再从值出发逐层展开为具体表达式，
+ * 每道题目的代价与目标答案的稀有程度无关。
+ * 当某层的全部组合数超过 {@link #MAX_COMBINATIONS_PER_LEVEL} 时（数值范围较大），
+ * 该层只由随机抽取的组合构建，索引覆盖的表达式空间相应缩小，但其中每个表达式都满足约束。
+ * 抽样构建的层中查不到某个值并不说明它不可达（见 {@link #isExhaustive(int)}）；
+ * 已知答案值时可以用 {@link #derive(int, Fraction, Random)} 从值反解出表达式，不依赖抽样。
+ */
+public class AnswerIndex {
+    public static final int MAX_COMBINATIONS_PER_LEVEL = 2_000_000;
+    // 索引的最大层数：每层最多占用数十 MB，更深的层不建索引
+    public static final int MAX_INDEXED_OPERATORS = ProblemGenerator.DEFAULT_MAX_OPERATORS;
+
+    private static final long EMPTY = 0L;
+    private static final ExpressionNode.Operator[] OPERATORS = ExpressionNode.Operator.values();
+    // 反解的六种形式：x + b、x - b、b - x、x × b、x ÷ b、b ÷ x（b 为叶节点）
+    private static final int DERIVATION_FORMS = 6;
+    private static final long NO_LEAF = -1L;
+
+    private final int range;
+    private final Level[] levels;
+
+    // 一层的值表：值以 分子<<32|分母 打包为 long（分母至少为 1，因此 0 可作空槽）
+    private static final class Level {
+        long[] slots;       // 开放寻址表：打包值
+        int[] slotIndex;    // 槽位对应的值下标
+        long[] values = new long[1024];
+        int size;
+
+        // 组合方式：运算符序号 | 左子树层号 << 2，左右子树在各自层中的值下标
+        // 构建时按产生顺序追加，构建完成后按值下标重排，值 v 的组合方式位于 [offsets[v], offsets[v+1])
+        int[] derivationValue = new int[1024];
+        byte[] derivationOps = new byte[1024];
+        int[] derivationLeft = new int[1024];
+        int[] derivationRight = new int[1024];
+        int derivationCount;
+        int[] offsets;
+        // 组合过多时由随机抽取的组合构建
+        boolean sampled;
+
+        Level() {
+            slots = new long[2048];
+            slotIndex = new int[2048];
+        }
+
+        int indexOf(long packed) {
+            int mask = slots.length - 1;
+            int slot = mix(packed) & mask;
+            while (slots[slot] != EMPTY) {
+                if (slots[slot] == packed) {
+                    return slotIndex[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        int add(long packed) {
+            int index = indexOf(packed);
+            if (index >= 0) {
+                return index;
+            }
+            if ((size + 1) * 4L > slots.length * 3L) {
+                rehash(slots.length * 2);
+            }
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            int mask = slots.length - 1;
+            int slot = mix(packed) & mask;
+            while (slots[slot] != EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = packed;
+            slotIndex[slot] = size;
+            values[size] = packed;
+            return size++;
+        }
+
+        void addDerivation(long packed, int opLevel, int left, int right) {
+            int index = add(packed);
+            if (derivationCount == derivationValue.length) {
+                int capacity = derivationCount * 2;
+                derivationValue = Arrays.copyOf(derivationValue, capacity);
+                derivationOps = Arrays.copyOf(derivationOps, capacity);
+                derivationLeft = Arrays.copyOf(derivationLeft, capacity);
+                derivationRight = Arrays.copyOf(derivationRight, capacity);
+            }
+            derivationValue[derivationCount] = index;
+            derivationOps[derivationCount] = (byte) opLevel;
+            derivationLeft[derivationCount] = left;
+            derivationRight[derivationCount] = right;
+            derivationCount++;
+        }
+
+        // 按值下标计数排序组合方式，并释放构建期的散列表
+        void seal() {
+            offsets = new int[size + 1];
+            for (int i = 0; i < derivationCount; i++) {
+                offsets[derivationValue[i] + 1]++;
+            }
+            for (int v = 0; v < size; v++) {
+                offsets[v + 1] += offsets[v];
+            }
+            int[] next = Arrays.copyOf(offsets, size);
+            byte[] ops = new byte[derivationCount];
+            int[] left = new int[derivationCount];
+            int[] right = new int[derivationCount];
+            for (int i = 0; i < derivationCount; i++) {
+                int at = next[derivationValue[i]]++;
+                ops[at] = derivationOps[i];
+                left[at] = derivationLeft[i];
+                right[at] = derivationRight[i];
+            }
+            derivationOps = ops;
+            derivationLeft = left;
+            derivationRight = right;
+            derivationValue = null;
+            values = Arrays.copyOf(values, size);
+            slots = null;
+            slotIndex = null;
+        }
+
+        private void rehash(int capacity) {
+            slots = new long[capacity];
+            slotIndex = new int[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = mix(values[i]) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = values[i];
+                slotIndex[slot] = i;
+            }
+        }
+    }
+
+    public AnswerIndex(int range) {
+        this(range, ProblemGenerator.DEFAULT_MAX_OPERATORS);
+    }
+
+    public AnswerIndex(int range, int maxOperators) {
+        if (range < 2) {
+            throw new BusinessException(ErrorCode.INVALID_RANGE_PARAMETER.getCode(),
+                    "指定答案生成要求数值范围至少为 2");
+        }
+        if (maxOperators < 1 || maxOperators > MAX_INDEXED_OPERATORS) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "答案索引的运算符个数必须在 1 到 " + MAX_INDEXED_OPERATORS + " 之间");
+        }
+        this.range = range;
+        this.levels = new Level[maxOperators + 1];
+        // 固定种子，同一范围的索引每次构建结果一致
+        SplittableRandom random = new SplittableRandom(range);
+        levels[0] = buildLeaves();
+        levels[0].seal();
+        for (int k = 1; k <= maxOperators; k++) {
+            levels[k] = buildLevel(k, random);
+            levels[k].seal();
+        }
+    }
+
+    public int getRange() {
+        return range;
+    }
+
+    public int getMaxOperators() {
+        return levels.length - 1;
+    }
+
+    /**
+     * 第 operatorCount 层可达的不同答案值个数
+     */
+    public int getValueCount(int operatorCount) {
+        return levels[operatorCount].size;
+    }
+
+    /**
+     * 第 operatorCount 层是否穷举了全部组合；抽样构建的层中查不到的值仍可能可达
+     */
+    public boolean isExhaustive(int operatorCount) {
+        return !levels[operatorCount].sampled;
+    }
+
+    /**
+     * 第 operatorCount 层记录的组合方式个数
+     */
+    public int getDerivationCount(int operatorCount) {
+        return levels[operatorCount].derivationCount;
+    }
+
+    /**
+     * 全部层的值个数之和，用于估算内存占用
+     */
+    public int getTotalValueCount() {
+        int total = 0;
+        for (Level level : levels) {
+            total += level.size;
+        }
+        return total;
+    }
+
+    /**
+     * 筛选第 operatorCount 层中满足条件的答案值，返回值下标
+     */
+    public int[] matching(int operatorCount, Predicate<Fraction> answerFilter) {
+        Level level = levels[operatorCount];
+        int[] matches = new int[16];
+        int count = 0;
+        for (int i = 0; i < level.size; i++) {
+            if (answerFilter.test(toFraction(level.values[i]))) {
+                if (count == matches.length) {
+                    matches = Arrays.copyOf(matches, count * 2);
+                }
+                matches[count++] = i;
+            }
+        }
+        return Arrays.copyOf(matches, count);
+    }
+
+    public Fraction valueOf(int operatorCount, int valueIndex) {
+        return toFraction(levels[operatorCount].values[valueIndex]);
+    }
+
+    /**
+     * 把第 operatorCount 层的某个值随机展开为一个具体表达式，其值恰好等于该值
+     */
+    public ExpressionNode expand(int operatorCount, int valueIndex, Random random) {
+        Level level = levels[operatorCount];
+        if (operatorCount == 0) {
+            return ExpressionNode.leaf(toFraction(level.values[valueIndex]));
+        }
+
+        int from = level.offsets[valueIndex];
+        int at = from + random.nextInt(level.offsets[valueIndex + 1] - from);
+        int opLevel = level.derivationOps[at];
+        ExpressionNode.Operator op = OPERATORS[opLevel & 3];
+        int leftLevel = opLevel >>> 2;
+        ExpressionNode left = expand(leftLevel, level.derivationLeft[at], random);
+        ExpressionNode right = expand(operatorCount - 1 - leftLevel, level.derivationRight[at], random);
+        return ExpressionNode.of(op, left, right);
+    }
+
+    /**
+     * 直接构造一个值等于 target、含 operatorCount 个运算符的表达式：一侧为叶节点，另一侧为第 operatorCount-1 层的已索引值，
+     * 由另一侧的值和 target 反解出叶节点。第 1 层的另一侧也是叶节点，叶节点层总是完整的，
+     * 因此第 1 层的结果与该层是否抽样构建无关：返回 null 即第 1 层确实没有值为 target 的表达式。
+     * 更深的层只覆盖已索引的子表达式。从随机位置开始扫描，同一 target 多次调用可以得到不同的表达式
+     * @return 值为 target 的表达式；找不到时返回 null
+     */
+    public ExpressionNode derive(int operatorCount, Fraction target, Random random) {
+        Level other = levels[operatorCount - 1];
+        if (other.size == 0 || !target.isValid() || target.getNumerator() < 0) {
+            return null;
+        }
+        long vn = target.getNumerator();
+        long vd = target.getDenominator();
+        int start = random.nextInt(other.size);
+        int firstForm = random.nextInt(DERIVATION_FORMS);
+        for (int step = 0; step < other.size; step++) {
+            int i = start + step < other.size ? start + step : start + step - other.size;
+            long x = other.values[i];
+            for (int f = 0; f < DERIVATION_FORMS; f++) {
+                int form = (firstForm + f) % DERIVATION_FORMS;
+                long leaf = solveLeaf(form, x >>> 32, x & 0xFFFFFFFFL, vn, vd);
+                if (leaf != NO_LEAF) {
+                    return derivedExpression(form, expand(operatorCount - 1, i, random),
+                            ExpressionNode.leaf(toFraction(leaf)), random);
+                }
+            }
+        }
+        return null;
+    }
+
+    // 由另一侧的值 x 和目标值 v 解出叶节点 b；b 不在叶节点取值范围内或组合不满足约束时返回 NO_LEAF
+    private long solveLeaf(int form, long xn, long xd, long vn, long vd) {
+        long numerator;
+        long denominator;
+        switch (form) {
+            case 0:
+                // x + b = v
+                numerator = vn * xd - xn * vd;
+                denominator = vd * xd;
+                break;
+            case 1:
+                // x - b = v
+                numerator = xn * vd - vn * xd;
+                denominator = xd * vd;
+                break;
+            case 2:
+                // b - x = v
+                numerator = vn * xd + xn * vd;
+                denominator = vd * xd;
+                break;
+            case 3:
+                // x × b = v
+                numerator = vn * xd;
+                denominator = vd * xn;
+                break;
+            case 4:
+                // x ÷ b = v，商为真分数
+                if (vn == 0 || vn >= vd) {
+                    return NO_LEAF;
+                }
+                numerator = xn * vd;
+                denominator = xd * vn;
+                break;
+            default:
+                // b ÷ x = v，商为真分数
+                if (vn >= vd) {
+                    return NO_LEAF;
+                }
+                numerator = vn * xn;
+                denominator = vd * xd;
+                break;
+        }
+        if (numerator <= 0 || denominator <= 0) {
+            return NO_LEAF;
+        }
+        long g = Fraction.gcd(numerator, denominator);
+        numerator /= g;
+        denominator /= g;
+        // 与 buildLeaves 一致：1 到 range-1 的整数，或分母小于 range 的真分数
+        boolean leaf = denominator == 1 ? numerator < range : denominator < range && numerator < denominator;
+        return leaf ? pack(numerator, denominator) : NO_LEAF;
+    }
+
+    private static ExpressionNode derivedExpression(int form, ExpressionNode x, ExpressionNode b, Random random) {
+        switch (form) {
+            case 0:
+                return random.nextBoolean() ? ExpressionNode.of(ExpressionNode.Operator.ADD, x, b)
+                        : ExpressionNode.of(ExpressionNode.Operator.ADD, b, x);
+            case 1:
+                return ExpressionNode.of(ExpressionNode.Operator.SUBTRACT, x, b);
+            case 2:
+                return ExpressionNode.of(ExpressionNode.Operator.SUBTRACT, b, x);
+            case 3:
+                return random.nextBoolean() ? ExpressionNode.of(ExpressionNode.Operator.MULTIPLY, x, b)
+                        : ExpressionNode.of(ExpressionNode.Operator.MULTIPLY, b, x);
+            case 4:
+                return ExpressionNode.of(ExpressionNode.Operator.DIVIDE, x, b);
+            default:
+                return ExpressionNode.of(ExpressionNode.Operator.DIVIDE, b, x);
+        }
+    }
+
+    // 与 ProblemGenerator.generateRandomFraction 的取值范围一致：1 到 range-1 的整数，分母 2 到 range-1 的真分数
+    private Level buildLeaves() {
+        Level level = new Level();
+        for (int n = 1; n < range; n++) {
+            level.add(pack(n, 1));
+        }
+        for (int d = 2; d < range; d++) {
+            for (int n = 1; n < d; n++) {
+                long g = Fraction.gcd(n, d);
+                level.add(pack(n / g, d / g));
+            }
+        }
+        return level;
+    }
+
+    private Level buildLevel(int k, SplittableRandom random) {
+        Level level = new Level();
+        long total = 0;
+        for (int leftLevel = 0; leftLevel < k; leftLevel++) {
+            total += (long) levels[leftLevel].size * levels[k - 1 - leftLevel].size * OPERATORS.length;
+        }
+
+        if (total <= MAX_COMBINATIONS_PER_LEVEL) {
+            // 穷举全部组合
+            for (int leftLevel = 0; leftLevel < k; leftLevel++) {
+                Level left = levels[leftLevel];
+                Level right = levels[k - 1 - leftLevel];
+                for (int i = 0; i < left.size; i++) {
+                    for (int j = 0; j < right.size; j++) {
+                        for (ExpressionNode.Operator op : OPERATORS) {
+                            combine(level, op, leftLevel, left, i, right, j);
+                        }
+                    }
+                }
+            }
+        } else {
+            // 组合过多时随机抽取，按各拆分方式的组合数加权
+            level.sampled = true;
+            for (int n = 0; n < MAX_COMBINATIONS_PER_LEVEL; n++) {
+                long pick = random.nextLong(total);
+                int leftLevel = 0;
+                long weight;
+                while (pick >= (weight = (long) levels[leftLevel].size * levels[k - 1 - leftLevel].size * OPERATORS.length)) {
+                    pick -= weight;
+                    leftLevel++;
+                }
+                Level left = levels[leftLevel];
+                Level right = levels[k - 1 - leftLevel];
+                combine(level, OPERATORS[random.nextInt(OPERATORS.length)], leftLevel,
+                        left, random.nextInt(left.size), right, random.nextInt(right.size));
+            }
+        }
+        return level;
+    }
+
+    private static void combine(Level target, ExpressionNode.Operator op, int leftLevel,
+                                Level left, int i, Level right, int j) {
+        long a = left.values[i];
+        long b = right.values[j];
+        long an = a >>> 32;
+        long ad = a & 0xFFFFFFFFL;
+        long bn = b >>> 32;
+        long bd = b & 0xFFFFFFFFL;
+
+        long numerator;
+        long denominator;
+        switch (op) {
+            case ADD:
+                numerator = an * bd + bn * ad;
+                denominator = ad * bd;
+                break;
+            case SUBTRACT:
+                // 结果不能为负数
+                numerator = an * bd - bn * ad;
+                if (numerator < 0) {
+                    return;
+                }
+                denominator = ad * bd;
+                break;
+            case MULTIPLY:
+                numerator = an * bn;
+                denominator = ad * bd;
+                break;
+            case DIVIDE:
+                // 除数非零，且结果为真分数（被除数小于除数）
+                if (bn == 0 || an * bd >= bn * ad) {
+                    return;
+                }
+                numerator = an * bd;
+                denominator = ad * bn;
+                break;
+            default:
+                return;
+        }
+
+        long g = Fraction.gcd(numerator, denominator);
+        numerator /= g;
+        denominator /= g;
+        if (numerator > Integer.MAX_VALUE || denominator > Integer.MAX_VALUE) {
+            return;
+        }
+        target.addDerivation(pack(numerator, denominator), op.ordinal() | leftLevel << 2, i, j);
+    }
+
+    private static long pack(long numerator, long denominator) {
+        return numerator << 32 | denominator;
+    }
+
+    private static Fraction toFraction(long packed) {
+        return new Fraction((int) (packed >>> 32), (int) (packed & 0xFFFFFFFFL));
+    }
+
+    private static int mix(long packed) {
+        long h = packed * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,182 @@
+package com.wyh;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * 批处理的汇总报告
+ * 按清单顺序列出每个任务的状态，以及整批的总耗时和各任务耗时之和（两者之比即并发带来的加速）
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchReport {
+    /**
+     * 单个任务的执行状态
+     */
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class JobStatus {
+        private final int line;
+        private final int range;
+        private final int count;
+        private final String exerciseFile;
+        private final String answerFile;
+        private int produced;
+        private long generateMillis;
+        private long elapsedMillis;
+        private long bytesWritten;
+        private String errorCode;
+        private String message;
+
+        JobStatus(BatchRunner.Job job) {
+            this.line = job.getLine();
+            this.range = job.getRange();
+            this.count = job.getCount();
+            this.exerciseFile = job.getExerciseFile();
+            this.answerFile = job.getAnswerFile();
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getRange() {
+            return range;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public String getExerciseFile() {
+            return exerciseFile;
+        }
+
+        public String getAnswerFile() {
+            return answerFile;
+        }
+
+        public int getProduced() {
+            return produced;
+        }
+
+        void setProduced(int produced) {
+            this.produced = produced;
+        }
+
+        /**
+         * 生成题目的耗时，不含文件写入
+         */
+        public long getGenerateMillis() {
+            return generateMillis;
+        }
+
+        void setGenerateMillis(long generateMillis) {
+            this.generateMillis = generateMillis;
+        }
+
+        /**
+         * 从开始生成到文件全部落盘的耗时
+         */
+        public long getElapsedMillis() {
+            return elapsedMillis;
+        }
+
+        void setElapsedMillis(long elapsedMillis) {
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        void setBytesWritten(long bytesWritten) {
+            this.bytesWritten = bytesWritten;
+        }
+
+        public String getErrorCode() {
+            return errorCode;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        void fail(String errorCode, String message) {
+            this.errorCode = errorCode;
+            this.message = message;
+        }
+
+        public boolean isSuccess() {
+            return errorCode == null;
+        }
+    }
+
+    private final List<JobStatus> jobs;
+    private final int parallelism;
+    private final long elapsedMillis;
+
+    public BatchReport(List<JobStatus> jobs, int parallelism, long elapsedMillis) {
+        this.jobs = jobs;
+        this.parallelism = parallelism;
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public List<JobStatus> getJobs() {
+        return jobs;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 整批的墙钟耗时
+     */
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**
+     * 各任务耗时之和，即逐个运行时的大致总耗时
+     */
+    public long getSerialMillis() {
+        long total = 0;
+        for (JobStatus job : jobs) {
+            total += job.elapsedMillis;
+        }
+        return total;
+    }
+
+    public int getSucceeded() {
+        int succeeded = 0;
+        for (JobStatus job : jobs) {
+            if (job.isSuccess()) {
+                succeeded++;
+            }
+        }
+        return succeeded;
+    }
+
+    public int getFailed() {
+        return jobs.size() - getSucceeded();
+    }
+
+    /**
+     * 转换为统一响应体：全部任务成功时为成功响应，否则为失败响应，数据中仍包含每个任务的状态
+     */
+    public ApiResponse<BatchReport> toApiResponse() {
+        if (getFailed() == 0) {
+            return ApiResponse.success(String.format("批处理完成，%d 个任务全部成功", jobs.size()), this);
+        }
+        ApiResponse<BatchReport> response = ApiResponse.error(ErrorCode.GENERATION_FAILED.getCode(),
+                String.format("批处理完成，%d 个任务中 %d 个失败", jobs.size(), getFailed()));
+        response.setData(this);
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchReport{jobs=%d, succeeded=%d, failed=%d, parallelism=%d, elapsedMillis=%d, serialMillis=%d}",
+                jobs.size(), getSucceeded(), getFailed(), parallelism, elapsedMillis, getSerialMillis());
+    }
+}
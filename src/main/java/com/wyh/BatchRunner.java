@@ -0,0 +1,348 @@
+package com.wyh;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.CompletionHandler;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 批处理：按任务清单一次生成多份题目
+ * 清单每行一个任务：{@code 范围 数量 题目文件 答案文件 [运算符上限]}，空行和 # 开头的行忽略，相对路径按工作目录解析。
+ *
+ * 任务在固定大小的线程池上并发执行，范围和运算符上限相同的任务共享注册表中的生成器和已验证表达式缓存；
+ * 题目数量大的任务先提交，整批耗时接近最大的单个任务而不是各任务之和。
+ * 文件通过 {@link AsynchronousFileChannel} 写出：工作线程把内容编码成块后立即提交写入并转去执行下一个任务，
+ * 磁盘写入与后续生成重叠进行。
+ */
+public class BatchRunner {
+    private final GeneratorRegistry generators;
+    private final Path workDir;
+    private final int parallelism;
+
+    /**
+     * 清单中的一个任务
+     */
+    public static final class Job {
+        private final int line;
+        private final int range;
+        private final int count;
+        private final String exerciseFile;
+        private final String answerFile;
+        private final int maxOperators;
+
+        public Job(int line, int range, int count, String exerciseFile, String answerFile) {
+            this(line, range, count, exerciseFile, answerFile, ProblemGenerator.DEFAULT_MAX_OPERATORS);
+        }
+
+        public Job(int line, int range, int count, String exerciseFile, String answerFile, int maxOperators) {
+            this.line = line;
+            this.range = range;
+            this.count = count;
+            this.exerciseFile = exerciseFile;
+            this.answerFile = answerFile;
+            this.maxOperators = maxOperators;
+        }
+
+        public int getLine() {
+            return line;
+        }
+
+        public int getRange() {
+            return range;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public String getExerciseFile() {
+            return exerciseFile;
+        }
+
+        public String getAnswerFile() {
+            return answerFile;
+        }
+
+        public int getMaxOperators() {
+            return maxOperators;
+        }
+    }
+
+    public BatchRunner(GeneratorRegistry generators, Path workDir, int parallelism) {
+        if (parallelism <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "批处理并发数必须为正整数，当前值: " + parallelism);
+        }
+        this.generators = generators;
+        this.workDir = workDir;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * 读取任务清单，格式错误时指出行号
+     */
+    public static List<Job> readManifest(Path manifest) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        Set<String> outputs = new HashSet<>();
+        try (BufferedReader reader = Files.newBufferedReader(manifest)) {
+            String text;
+            int line = 0;
+            while ((text = reader.readLine()) != null) {
+                line++;
+                text = text.trim();
+                if (text.isEmpty() || text.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = text.split("\\s+");
+                if (fields.length != 4 && fields.length != 5) {
+                    throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                            String.format("任务清单第 %d 行格式错误，应为: 范围 数量 题目文件 答案文件 [运算符上限]", line));
+                }
+                int range;
+                int count;
+                int maxOperators = ProblemGenerator.DEFAULT_MAX_OPERATORS;
+                try {
+                    range = Integer.parseInt(fields[0]);
+                    count = Integer.parseInt(fields[1]);
+                    if (fields.length == 5) {
+                        maxOperators = Integer.parseInt(fields[4]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                            String.format("任务清单第 %d 行的范围、数量和运算符上限必须为数字", line));
+                }
+                if (maxOperators < 1 || maxOperators > ProblemGenerator.MAX_OPERATOR_LIMIT) {
+                    throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                            String.format("任务清单第 %d 行的运算符上限必须在 1 到 %d 之间",
+                                    line, ProblemGenerator.MAX_OPERATOR_LIMIT));
+                }
+                if (range <= 0 || count <= 0) {
+                    throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                            String.format("任务清单第 %d 行的范围和数量必须为正整数", line));
+                }
+                // 两个任务写同一个文件会互相覆盖
+                for (String output : new String[]{fields[2], fields[3]}) {
+                    if (!outputs.add(output)) {
+                        throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                                String.format("任务清单第 %d 行的输出文件 %s 与其他任务重复", line, output));
+                    }
+                }
+                jobs.add(new Job(line, range, count, fields[2], fields[3], maxOperators));
+            }
+        }
+        if (jobs.isEmpty()) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "任务清单中没有任务: " + manifest);
+        }
+        return jobs;
+    }
+
+    /**
+     * 执行全部任务并等待文件落盘；单个任务失败不影响其他任务，失败信息记录在报告中
+     */
+    public BatchReport run(List<Job> jobs) {
+        long start = System.nanoTime();
+        List<BatchReport.JobStatus> statuses = new ArrayList<>();
+        for (Job job : jobs) {
+            statuses.add(new BatchReport.JobStatus(job));
+        }
+
+        // 大任务先提交，避免最后才开始的大任务拖长整批耗时
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < jobs.size(); i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingInt((Integer i) -> jobs.get(i).getCount()).reversed());
+
+        ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+        try {
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[jobs.size()];
+            for (int i : order) {
+                futures[i] = submit(jobs.get(i), statuses.get(i), pool);
+            }
+            CompletableFuture.allOf(futures).join();
+        } finally {
+            pool.shutdown();
+        }
+
+        return new BatchReport(statuses, parallelism, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private CompletableFuture<Void> submit(Job job, BatchReport.JobStatus status, ExecutorService pool) {
+        long[] startNanos = new long[1];
+        return CompletableFuture.supplyAsync(() -> {
+            startNanos[0] = System.nanoTime();
+            OffHeapProblemStore problems = new OffHeapProblemStore();
+            try {
+                generators.acquire(job.getRange(), job.getMaxOperators())
+                        .generateProblems(job.getCount(), null, problems::add);
+                status.setProduced(problems.size());
+                status.setGenerateMillis((System.nanoTime() - startNanos[0]) / 1_000_000);
+                // 编码完成后存储即可释放，写入在后台继续
+                CompletableFuture<Long> exercises = writeAsync(problems, true, job.getExerciseFile());
+                CompletableFuture<Long> answers = writeAsync(problems, false, job.getAnswerFile());
+                return exercises.thenCombine(answers, Long::sum);
+            } finally {
+                problems.close();
+            }
+        }, pool).thenCompose(written -> written).handle((bytes, error) -> {
+            status.setElapsedMillis((System.nanoTime() - startNanos[0]) / 1_000_000);
+            if (error == null) {
+                status.setBytesWritten(bytes);
+            } else {
+                recordFailure(status, error);
+            }
+            return null;
+        });
+    }
+
+    private CompletableFuture<Long> writeAsync(OffHeapProblemStore problems, boolean exercises, String fileName) {
+        AsyncFileSink sink;
+        try {
+            sink = new AsyncFileSink(workDir.resolve(fileName));
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.FILE_WRITE_ERROR.getCode(),
+                    "无法创建输出文件 " + fileName + ": " + e.getMessage(), e);
+        }
+        try (AsyncFileSink channel = sink) {
+            if (exercises) {
+                problems.writeExercisesTo(channel);
+            } else {
+                problems.writeAnswersTo(channel);
+            }
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.FILE_WRITE_ERROR.getCode(),
+                    "写入文件 " + fileName + " 失败: " + e.getMessage(), e);
+        }
+        return sink.completion();
+    }
+
+    private static void recordFailure(BatchReport.JobStatus status, Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        if (cause instanceof BusinessException) {
+            status.fail(((BusinessException) cause).getErrorCode(), cause.getMessage());
+        } else if (cause instanceof IOException) {
+            status.fail(ErrorCode.FILE_WRITE_ERROR.getCode(), "文件写入失败: " + cause.getMessage());
+        } else {
+            status.fail(ErrorCode.GENERATION_FAILED.getCode(), "题目生成过程中发生错误: " + cause);
+        }
+    }
+
+    /**
+     * 把顺序写入转换为异步文件写入的通道
+     * 每次 write 复制调用方的数据并立即按文件位置提交，不等待写入完成；
+     * close 之后等所有已提交的写入完成再关闭文件，结果由 {@link #completion()} 给出
+     */
+    private static final class AsyncFileSink implements WritableByteChannel {
+        private final AsynchronousFileChannel channel;
+        private final CompletableFuture<Long> completion = new CompletableFuture<>();
+        // 未完成的写入数，通道打开期间额外持有 1
+        private final AtomicInteger pending = new AtomicInteger(1);
+        private long position;
+        private boolean open = true;
+        private volatile Throwable failure;
+
+        AsyncFileSink(Path path) throws IOException {
+            channel = AsynchronousFileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        }
+
+        // 一块数据及其在文件中的起始位置；部分写入时从剩余部分继续
+        private final class Chunk implements CompletionHandler<Integer, Void> {
+            private final ByteBuffer buffer;
+            private final long start;
+
+            Chunk(ByteBuffer buffer, long start) {
+                this.buffer = buffer;
+                this.start = start;
+            }
+
+            void submit() {
+                channel.write(buffer, start + buffer.position(), null, this);
+            }
+
+            @Override
+            public void completed(Integer written, Void attachment) {
+                if (buffer.hasRemaining()) {
+                    submit();
+                } else {
+                    release();
+                }
+            }
+
+            @Override
+            public void failed(Throwable error, Void attachment) {
+                failure = error;
+                release();
+            }
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (failure != null) {
+                throw new IOException(failure);
+            }
+            int length = src.remaining();
+            ByteBuffer copy = ByteBuffer.allocate(length);
+            copy.put(src).flip();
+            pending.incrementAndGet();
+            new Chunk(copy, position).submit();
+            position += length;
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (open) {
+                open = false;
+                release();
+            }
+        }
+
+        CompletableFuture<Long> completion() {
+            return completion;
+        }
+
+        private void release() {
+            if (pending.decrementAndGet() != 0) {
+                return;
+            }
+            try {
+                channel.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+            if (failure == null) {
+                completion.complete(position);
+            } else {
+                completion.completeExceptionally(failure);
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.wyh;
+
+/**
+ * 取消令牌
+ * 调用方（如请求超时或客户端断开）调用 {@link #cancel()} 后，正在进行的生成会在下一次尝试前停止，
+ * 并返回已经生成的题目
+ */
+public class CancellationToken {
+    private volatile boolean cancelled;
+
+    public void cancel() {
+        cancelled = true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+}
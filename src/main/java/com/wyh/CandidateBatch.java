@@ -0,0 +1,293 @@
+package com.wyh;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * 批量候选表达式求值核
+ * 一次抽取 {@link #BLOCK_SIZE} 个候选：先为每个候选按生成器的方式抽取运算符个数和树形，
+ * 同一树形的候选放在一起，叶节点数值、运算符按“节点 × 候选”存入基本类型数组（列式存储），
+ * 再按后序逐个节点对整列做四则运算、约分、非负和真分数检查，循环体内没有对象和虚调用。
+ * 只有通过检查的候选才按记录的运算符和左右交换标记构建 {@link ExpressionNode}。
+ *
+ * 约束与 {@code ProblemGenerator.applyOptimizedConstraints} 一致：减法结果为负、除法商不是真分数时交换左右操作数；
+ * 交换后仍不满足（两数相等的除法）或溢出 int 的候选被丢弃。运算与 {@link Fraction} 的 try 系列方法逐位一致。
+ * 只支持运算符个数不超过 {@link #MAX_OPERATORS} 的树形，树形数量很少，可以全部预先枚举。
+ */
+final class CandidateBatch {
+    static final int BLOCK_SIZE = 1024;
+    static final int MAX_OPERATORS = 3;
+
+    private static final ExpressionNode.Operator[] OPERATORS = ExpressionNode.Operator.values();
+    private static final byte ADD = (byte) ExpressionNode.Operator.ADD.ordinal();
+    private static final byte SUBTRACT = (byte) ExpressionNode.Operator.SUBTRACT.ordinal();
+    private static final byte MULTIPLY = (byte) ExpressionNode.Operator.MULTIPLY.ordinal();
+
+    private final int range;
+    private final Shape[] shapes;
+    private final double[] cumulative;
+
+    // 本块的候选顺序：第 i 个候选属于 slotShape[i] 树形的第 slotLane[i] 列
+    private final int[] slotShape = new int[BLOCK_SIZE];
+    private final int[] slotLane = new int[BLOCK_SIZE];
+    private int next = BLOCK_SIZE;
+    private Fraction value;
+
+    // 树形：节点按后序排列，根为最后一个；叶节点的 left 为 -1
+    private static final class Shape {
+        final int[] left;
+        final int[] right;
+        final int nodes;
+        // 列式存储，下标为 节点 * BLOCK_SIZE + 列
+        final long[] numerator;
+        final long[] denominator;
+        final byte[] operator;
+        final boolean[] swapped;
+        final boolean[] valid = new boolean[BLOCK_SIZE];
+        int lanes;
+
+        Shape(int[] left, int[] right) {
+            this.left = left;
+            this.right = right;
+            this.nodes = left.length;
+            this.numerator = new long[nodes * BLOCK_SIZE];
+            this.denominator = new long[nodes * BLOCK_SIZE];
+            this.operator = new byte[nodes * BLOCK_SIZE];
+            this.swapped = new boolean[nodes * BLOCK_SIZE];
+        }
+    }
+
+    CandidateBatch(int range, int minOperators, int maxOperators) {
+        if (minOperators < 1 || maxOperators > MAX_OPERATORS || minOperators > maxOperators) {
+            throw new IllegalArgumentException("批量求值只支持 1 到 " + MAX_OPERATORS + " 个运算符");
+        }
+        this.range = range;
+        List<int[][]> structures = new ArrayList<>();
+        List<Double> weights = new ArrayList<>();
+        for (int k = minOperators; k <= maxOperators; k++) {
+            enumerate(k, 1.0 / (maxOperators - minOperators + 1), structures, weights);
+        }
+        this.shapes = new Shape[structures.size()];
+        this.cumulative = new double[structures.size()];
+        double total = 0;
+        for (int i = 0; i < shapes.length; i++) {
+            shapes[i] = new Shape(structures.get(i)[0], structures.get(i)[1]);
+            total += weights.get(i);
+            cumulative[i] = total;
+        }
+    }
+
+    /**
+     * 下一个通过检查的候选；本块全部候选都未通过时返回 null（计为一次尝试）
+     */
+    ExpressionNode next(Random random) {
+        if (next == BLOCK_SIZE) {
+            refill(random);
+        }
+        while (next < BLOCK_SIZE) {
+            int slot = next++;
+            Shape shape = shapes[slotShape[slot]];
+            int lane = slotLane[slot];
+            if (shape.valid[lane]) {
+                return build(shape, lane);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 上一次 {@link #next(Random)} 返回的表达式的值
+     */
+    Fraction value() {
+        return value;
+    }
+
+    private void refill(Random random) {
+        for (Shape shape : shapes) {
+            shape.lanes = 0;
+        }
+        // 树形分布与逐个生成时相同：运算符个数均匀，左子树运算符个数均匀
+        for (int slot = 0; slot < BLOCK_SIZE; slot++) {
+            double u = random.nextDouble();
+            int s = 0;
+            while (s < cumulative.length - 1 && u >= cumulative[s]) {
+                s++;
+            }
+            slotShape[slot] = s;
+            slotLane[slot] = shapes[s].lanes++;
+        }
+        for (Shape shape : shapes) {
+            if (shape.lanes > 0) {
+                evaluate(shape, random);
+            }
+        }
+        next = 0;
+    }
+
+    private void evaluate(Shape shape, Random random) {
+        int lanes = shape.lanes;
+        long[] num = shape.numerator;
+        long[] den = shape.denominator;
+        byte[] ops = shape.operator;
+        boolean[] swapped = shape.swapped;
+        boolean[] valid = shape.valid;
+        for (int lane = 0; lane < lanes; lane++) {
+            valid[lane] = true;
+        }
+
+        for (int node = 0; node < shape.nodes; node++) {
+            int out = node * BLOCK_SIZE;
+            if (shape.left[node] < 0) {
+                fillLeaves(num, den, out, lanes, random);
+                continue;
+            }
+            for (int lane = 0; lane < lanes; lane++) {
+                ops[out + lane] = randomOperator(random);
+            }
+
+            int l = shape.left[node] * BLOCK_SIZE;
+            int r = shape.right[node] * BLOCK_SIZE;
+            for (int lane = 0; lane < lanes; lane++) {
+                long a = num[l + lane];
+                long b = den[l + lane];
+                long c = num[r + lane];
+                long d = den[r + lane];
+                byte op = ops[out + lane];
+                long ad = a * d;
+                long cb = c * b;
+                long bd = b * d;
+
+                long n;
+                long m;
+                boolean swap = false;
+                boolean ok = true;
+                if (op == ADD) {
+                    n = ad + cb;
+                    m = bd;
+                } else if (op == SUBTRACT) {
+                    n = ad - cb;
+                    m = bd;
+                    swap = n < 0;
+                    n = swap ? -n : n;
+                } else if (op == MULTIPLY) {
+                    n = a * c;
+                    m = bd;
+                } else {
+                    // 商为真分数即 a/b < c/d；否则交换为 c/d ÷ a/b，两数相等时交换后也不是真分数
+                    swap = ad > cb;
+                    ok = ad != cb;
+                    n = swap ? cb : ad;
+                    m = swap ? ad : cb;
+                }
+
+                long g = Fraction.gcd(n, m);
+                g = g == 0 ? 1 : g;
+                n /= g;
+                m /= g;
+                num[out + lane] = n;
+                den[out + lane] = m;
+                swapped[out + lane] = swap;
+                valid[lane] &= ok && m != 0 && n <= Integer.MAX_VALUE && m <= Integer.MAX_VALUE;
+            }
+        }
+    }
+
+    // 与 ProblemGenerator.generateRandomFraction 的分布一致，分数约分后存入
+    private void fillLeaves(long[] num, long[] den, int out, int lanes, Random random) {
+        for (int lane = 0; lane < lanes; lane++) {
+            long n;
+            long d;
+            if (random.nextDouble() < 0.8) {
+                n = random.nextInt(range - 1) + 1;
+                d = 1;
+            } else {
+                d = random.nextInt(range - 2) + 2;
+                n = random.nextInt((int) d - 1) + 1;
+                long g = Fraction.gcd(n, d);
+                n /= g;
+                d /= g;
+            }
+            num[out + lane] = n;
+            den[out + lane] = d;
+        }
+    }
+
+    // 与 ProblemGenerator.randomOperator 的分布一致
+    private static byte randomOperator(Random random) {
+        if (random.nextDouble() < 0.3) {
+            return random.nextBoolean() ? ADD : MULTIPLY;
+        }
+        return (byte) random.nextInt(OPERATORS.length);
+    }
+
+    private ExpressionNode build(Shape shape, int lane) {
+        ExpressionNode[] nodes = new ExpressionNode[shape.nodes];
+        for (int node = 0; node < shape.nodes; node++) {
+            int at = node * BLOCK_SIZE + lane;
+            if (shape.left[node] < 0) {
+                nodes[node] = ExpressionNode.leaf(new Fraction((int) shape.numerator[at], (int) shape.denominator[at]));
+                continue;
+            }
+            ExpressionNode left = nodes[shape.left[node]];
+            ExpressionNode right = nodes[shape.right[node]];
+            ExpressionNode.Operator op = OPERATORS[shape.operator[at]];
+            nodes[node] = shape.swapped[at] ? ExpressionNode.of(op, right, left) : ExpressionNode.of(op, left, right);
+        }
+        int root = (shape.nodes - 1) * BLOCK_SIZE + lane;
+        value = new Fraction((int) shape.numerator[root], (int) shape.denominator[root]);
+        return nodes[shape.nodes - 1];
+    }
+
+    // 枚举 k 个运算符的全部树形及其概率：左子树运算符个数在 0..k-1 中均匀选择
+    private static void enumerate(int k, double weight, List<int[][]> structures, List<Double> weights) {
+        List<int[][]> shapes = new ArrayList<>();
+        List<Double> probabilities = new ArrayList<>();
+        shapesOf(k, shapes, probabilities);
+        for (int i = 0; i < shapes.size(); i++) {
+            structures.add(shapes.get(i));
+            weights.add(weight * probabilities.get(i));
+        }
+    }
+
+    private static void shapesOf(int k, List<int[][]> shapes, List<Double> probabilities) {
+        if (k == 0) {
+            shapes.add(new int[][]{{-1}, {-1}});
+            probabilities.add(1.0);
+            return;
+        }
+        for (int leftOps = 0; leftOps < k; leftOps++) {
+            List<int[][]> leftShapes = new ArrayList<>();
+            List<Double> leftProbabilities = new ArrayList<>();
+            shapesOf(leftOps, leftShapes, leftProbabilities);
+            List<int[][]> rightShapes = new ArrayList<>();
+            List<Double> rightProbabilities = new ArrayList<>();
+            shapesOf(k - 1 - leftOps, rightShapes, rightProbabilities);
+            for (int i = 0; i < leftShapes.size(); i++) {
+                for (int j = 0; j < rightShapes.size(); j++) {
+                    shapes.add(join(leftShapes.get(i), rightShapes.get(j)));
+                    probabilities.add(leftProbabilities.get(i) * rightProbabilities.get(j) / k);
+                }
+            }
+        }
+    }
+
+    // 后序拼接：左子树节点、右子树节点（下标整体后移）、根
+    private static int[][] join(int[][] leftShape, int[][] rightShape) {
+        int leftNodes = leftShape[0].length;
+        int rightNodes = rightShape[0].length;
+        int[] left = new int[leftNodes + rightNodes + 1];
+        int[] right = new int[left.length];
+        for (int i = 0; i < leftNodes; i++) {
+            left[i] = leftShape[0][i];
+            right[i] = leftShape[1][i];
+        }
+        for (int i = 0; i < rightNodes; i++) {
+            left[leftNodes + i] = rightShape[0][i] < 0 ? -1 : rightShape[0][i] + leftNodes;
+            right[leftNodes + i] = rightShape[1][i] < 0 ? -1 : rightShape[1][i] + leftNodes;
+        }
+        left[left.length - 1] = leftNodes - 1;
+        right[right.length - 1] = left.length - 2;
+        return new int[][]{left, right};
+    }
+}
@@ -0,0 +1,245 @@
+package com.wyh;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * 规范化键索引
+ * 以 64 位哈希的形式保存已生成题目的规范化键，作为题目文件旁的紧凑索引文件，
+ * 用于追加模式下的去重。加载时间只与索引条目数有关，不需要重新解析题目文件。
+ *
+ * 文件格式（大端）：魔数(int) 版本(int) 条目数(long) 之后为条目数个 long 哈希值
+ */
+public class CanonicalKeyIndex {
+    private static final int MAGIC = 0x57594849; // "WYHI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final long EMPTY = 0L;
+    private static final long ZERO_REPLACEMENT = 0x9E3779B97F4A7C15L;
+
+    // 开放寻址哈希表，0 表示空槽
+    private long[] table;
+    private int size;
+
+    // 本次运行新加入、尚未写入索引文件的哈希
+    private long[] pending = new long[16];
+    private int pendingSize;
+
+    public CanonicalKeyIndex() {
+        this(16);
+    }
+
+    public CanonicalKeyIndex(int expectedSize) {
+        this.table = new long[tableSizeFor(expectedSize)];
+    }
+
+    /**
+     * 计算规范化键的 64 位哈希（FNV-1a 加最终混淆）
+     */
+    public static long hash(String canonicalKey) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < canonicalKey.length(); i++) {
+            h ^= canonicalKey.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h == EMPTY ? ZERO_REPLACEMENT : h;
+    }
+
+    public boolean contains(long hash) {
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = mix(hash) & mask;
+        while (t[slot] != EMPTY) {
+            if (t[slot] == hash) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    public boolean containsKey(String canonicalKey) {
+        return contains(hash(canonicalKey));
+    }
+
+    /**
+     * 加入一个哈希，返回是否为新条目；新条目会在下次 {@link #save(Path)} 时追加到索引文件
+     */
+    public boolean add(long hash) {
+        if (!insert(hash)) {
+            return false;
+        }
+        if (pendingSize == pending.length) {
+            pending = Arrays.copyOf(pending, pendingSize * 2);
+        }
+        pending[pendingSize++] = hash;
+        return true;
+    }
+
+    public boolean addKey(String canonicalKey) {
+        return add(hash(canonicalKey));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean insert(long hash) {
+        if ((size + 1) * 4L > table.length * 3L) {
+            rehash(table.length * 2);
+        }
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = mix(hash) & mask;
+        while (t[slot] != EMPTY) {
+            if (t[slot] == hash) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = hash;
+        size++;
+        return true;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = table;
+        table = new long[newCapacity];
+        int mask = newCapacity - 1;
+        for (long h : old) {
+            if (h != EMPTY) {
+                int slot = mix(h) & mask;
+                while (table[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                table[slot] = h;
+            }
+        }
+    }
+
+    private static int mix(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+
+    private static int tableSizeFor(int expectedSize) {
+        long needed = Math.max(16L, expectedSize * 4L / 3 + 1);
+        int capacity = Integer.highestOneBit((int) Math.min(needed, 1 << 30));
+        return capacity < needed ? capacity << 1 : capacity;
+    }
+
+    /**
+     * 从索引文件加载，文件不存在时返回空索引
+     */
+    public static CanonicalKeyIndex load(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return new CanonicalKeyIndex();
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long count = readHeader(channel, path);
+            if (count > Integer.MAX_VALUE - 8) {
+                throw new IOException("索引文件条目过多: " + path);
+            }
+            CanonicalKeyIndex index = new CanonicalKeyIndex((int) count);
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.BIG_ENDIAN);
+            long remaining = count;
+            while (remaining > 0) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), remaining * Long.BYTES));
+                while (buffer.hasRemaining()) {
+                    if (channel.read(buffer) < 0) {
+                        throw new IOException("索引文件已截断: " + path);
+                    }
+                }
+                buffer.flip();
+                LongBuffer longs = buffer.asLongBuffer();
+                while (longs.hasRemaining()) {
+                    index.insert(longs.get());
+                }
+                remaining -= buffer.limit() / Long.BYTES;
+            }
+            return index;
+        }
+    }
+
+    /**
+     * 将新条目写入索引文件：文件已存在时原地追加并更新头部条目数，否则完整写出
+     */
+    public void save(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            try (FileChannel channel = FileChannel.open(path,
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(channel, 0);
+                channel.position(HEADER_SIZE);
+                appendPending(channel, 0);
+            }
+        } else {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long count = readHeader(channel, path);
+                channel.position(HEADER_SIZE + count * Long.BYTES);
+                appendPending(channel, count);
+            }
+        }
+        pendingSize = 0;
+    }
+
+    private void appendPending(FileChannel channel, long existingCount) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16).order(ByteOrder.BIG_ENDIAN);
+        for (int i = 0; i < pendingSize; i++) {
+            if (buffer.remaining() < Long.BYTES) {
+                drain(channel, buffer);
+            }
+            buffer.putLong(pending[i]);
+        }
+        drain(channel, buffer);
+        // 数据落盘后再更新头部条目数，中途失败时旧索引仍然有效
+        writeHeader(channel, existingCount + pendingSize);
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static void writeHeader(FileChannel channel, long count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putLong(count).flip();
+        while (header.hasRemaining()) {
+            channel.write(header, header.position());
+        }
+    }
+
+    private static long readHeader(FileChannel channel, Path path) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.BIG_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException("索引文件格式错误: " + path);
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            throw new IOException("索引文件格式错误: " + path);
+        }
+        long count = header.getLong();
+        if (count < 0 || HEADER_SIZE + count * Long.BYTES > channel.size()) {
+            throw new IOException("索引文件已截断: " + path);
+        }
+        return count;
+    }
+}
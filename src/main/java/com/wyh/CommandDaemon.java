@@ -0,0 +1,233 @@
+package com.wyh;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.SecureRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 常驻守护进程
+ * 保持一个已预热的 JVM 以及按范围缓存的题目生成器，客户端把 -n/-r/-e/-a 等参数转发过来执行，
+ * 标准输出、错误输出和退出码按帧回传。文件读写按客户端的工作目录解析，直接落在客户端所在目录。
+ *
+ * 项目基于 JDK 11，没有 Unix 域套接字支持，因此监听 127.0.0.1 的临时端口，
+ * 端口号与随机令牌写入仅属主可读的端点文件（默认 ~/.wyh-daemon），客户端必须携带令牌才能调用。
+ */
+public class CommandDaemon {
+    public static final String DAEMON_FLAG = "--daemon";
+    public static final String CLIENT_FLAG = "--client";
+
+    private static final int PROTOCOL_MAGIC = 0x57594844; // "WYHD"
+    private static final byte FRAME_STDOUT = 1;
+    private static final byte FRAME_STDERR = 2;
+    private static final byte FRAME_EXIT = 3;
+
+    private static final int[] WARM_UP_RANGES = {10, 20, 50, 100};
+    private static final int WARM_UP_COUNT = 2000;
+
+    public static Path endpointFile() {
+        String configured = System.getProperty("wyh.daemon.file");
+        if (configured != null) {
+            return Paths.get(configured);
+        }
+        return Paths.get(System.getProperty("user.home"), ".wyh-daemon");
+    }
+
+    /**
+     * 启动守护进程并阻塞处理请求
+     */
+    public static void serve() {
+        Path endpoint = endpointFile();
+        GeneratorRegistry generators = GeneratorRegistry.shared();
+        // 生成器缓存线程安全，请求在固定大小的线程池上并发执行
+        ExecutorService worker = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+
+        try (ServerSocket server = new ServerSocket()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 128);
+            String token = newToken();
+
+            warmUp(generators);
+            writeEndpoint(endpoint, server.getLocalPort(), token);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    Files.deleteIfExists(endpoint);
+                } catch (IOException ignored) {
+                    // 退出时尽力清理
+                }
+            }));
+            System.out.printf("守护进程已启动，监听 127.0.0.1:%d，端点文件 %s\n", server.getLocalPort(), endpoint);
+
+            while (!server.isClosed()) {
+                Socket socket = server.accept();
+                worker.submit(() -> handle(socket, token, generators));
+            }
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.INTERNAL_ERROR.getCode(),
+                    "守护进程运行失败: " + e.getMessage(), e);
+        } finally {
+            worker.shutdownNow();
+        }
+    }
+
+    /**
+     * 客户端模式：把参数转发给守护进程执行，返回其退出码
+     */
+    public static int forward(String[] args) {
+        try {
+            return invoke(args, Paths.get("").toAbsolutePath(), System.out, System.err);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("错误: 无法连接守护进程: " + e.getMessage());
+            return 1;
+        }
+    }
+
+    /**
+     * 以指定工作目录调用守护进程，输出写入给定的流，返回退出码
+     */
+    public static int invoke(String[] args, Path workDir, OutputStream stdout, OutputStream stderr)
+            throws IOException {
+        Path endpoint = endpointFile();
+        if (!Files.exists(endpoint)) {
+            throw new IOException("守护进程未启动，请先执行 --daemon（端点文件不存在: " + endpoint + "）");
+        }
+        String[] parts = new String(Files.readAllBytes(endpoint), StandardCharsets.UTF_8).trim().split("\\s+");
+        int port = Integer.parseInt(parts[0]);
+        String token = parts[1];
+
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            DataOutputStream request = new DataOutputStream(
+                    new BufferedOutputStream(socket.getOutputStream()));
+            request.writeInt(PROTOCOL_MAGIC);
+            request.writeUTF(token);
+            request.writeUTF(workDir.toString());
+            request.writeUTF(Charset.defaultCharset().name());
+            request.writeInt(args.length);
+            for (String arg : args) {
+                request.writeUTF(arg);
+            }
+            request.flush();
+
+            DataInputStream response = new DataInputStream(
+                    new BufferedInputStream(socket.getInputStream()));
+            byte[] buffer = new byte[8192];
+            while (true) {
+                byte type = response.readByte();
+                if (type == FRAME_EXIT) {
+                    stdout.flush();
+                    stderr.flush();
+                    return response.readInt();
+                }
+                int length = response.readInt();
+                if (buffer.length < length) {
+                    buffer = new byte[length];
+                }
+                response.readFully(buffer, 0, length);
+                (type == FRAME_STDERR ? stderr : stdout).write(buffer, 0, length);
+            }
+        }
+    }
+
+    private static void handle(Socket socket, String token, GeneratorRegistry generators) {
+        try (Socket s = socket) {
+            s.setTcpNoDelay(true);
+            DataInputStream request = new DataInputStream(new BufferedInputStream(s.getInputStream()));
+            if (request.readInt() != PROTOCOL_MAGIC || !token.equals(request.readUTF())) {
+                return; // 非法请求直接断开
+            }
+            Path workDir = Paths.get(request.readUTF());
+            Charset charset = Charset.forName(request.readUTF());
+            String[] args = new String[request.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = request.readUTF();
+            }
+
+            DataOutputStream response = new DataOutputStream(new BufferedOutputStream(s.getOutputStream()));
+            PrintStream out = framedStream(response, FRAME_STDOUT, charset);
+            PrintStream err = framedStream(response, FRAME_STDERR, charset);
+
+            int exitCode = 0;
+            try {
+                new Main(workDir, out, generators).execute(args);
+            } catch (Exception e) {
+                GlobalExceptionHandler.handleCommandLineException(e, out, err);
+                exitCode = 1;
+            }
+
+            out.flush();
+            err.flush();
+            response.writeByte(FRAME_EXIT);
+            response.writeInt(exitCode);
+            response.flush();
+        } catch (IOException e) {
+            System.err.println("处理客户端请求失败: " + e.getMessage());
+        }
+    }
+
+    private static PrintStream framedStream(DataOutputStream response, byte type, Charset charset) {
+        OutputStream frames = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return;
+                }
+                response.writeByte(type);
+                response.writeInt(len);
+                response.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                response.flush();
+            }
+        };
+        return new PrintStream(new BufferedOutputStream(frames, 8192), false, charset);
+    }
+
+    private static void warmUp(GeneratorRegistry generators) {
+        for (int range : WARM_UP_RANGES) {
+            generators.acquire(range).generateProblems(WARM_UP_COUNT);
+        }
+    }
+
+    private static String newToken() {
+        byte[] bytes = new byte[16];
+        new SecureRandom().nextBytes(bytes);
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static void writeEndpoint(Path endpoint, int port, String token) throws IOException {
+        Files.deleteIfExists(endpoint);
+        if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createFile(endpoint, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rw-------")));
+        }
+        Files.write(endpoint, (port + " " + token).getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -2,6 +2,10 @@ package com.wyh;
 
 import lombok.Data;
 
+import java.util.Arrays;
+import java.util.Set;
+import java.util.function.Predicate;
+
 /**
  * 命令行参数封装类
  * 用于解析和存储命令行输入的参数
@@ -12,6 +16,24 @@ public class CommandLineArgs {
     private int range = -1;          // 数值范围，-1表示未设置
     private String exerciseFile;     // 题目文件路径
     private String answerFile;       // 答案文件路径
+    private boolean append;          // 追加模式：在已有题目文件后追加不重复的新题目
+    private boolean gzip;            // 以 gzip 压缩格式输出题目和答案文件
+    private boolean sidecar;         // 同时输出判分校验文件，判分时不必重新解析题目
+    private boolean compressRanges;  // 判分结果中连续题号合并为区间，如 1-5000
+    private int[] quotas;            // 分层生成配额，以运算符个数为下标
+    private DifficultyProfile difficulty; // 难度配置，按比例分配 -n 道题目
+    private int maxOperators = ProblemGenerator.DEFAULT_MAX_OPERATORS; // 每道题目的最大运算符个数
+    private boolean ranked;          // 按编号抽样生成，不使用去重集合
+    private Long seed;               // 随机种子，指定时结果可复现，null 表示不指定
+    private long timeBudgetMillis;   // 生成时间预算（毫秒），0 表示不限时；到期后输出已生成的部分题目
+    private boolean integerAnswers;  // 只生成答案为整数的题目
+    private Fraction maxAnswer;      // 只生成答案不超过该值的题目，null 表示不限
+    private Set<Fraction> answers;   // 只生成答案属于该集合的题目，null 表示不限
+    private ExportFormat format = ExportFormat.TXT; // 输出格式：txt、ndjson 或 bin
+    private double falsePositiveRate = DuplicateFilter.DEFAULT_FALSE_POSITIVE_RATE; // 去重布隆过滤器误判率
+    private int dedupMemoryMb = (int) (DuplicateFilter.DEFAULT_MEMORY_BYTES >> 20); // 去重内存预算（MB），超出后写入磁盘
+    private String batchManifest;    // 批处理任务清单路径
+    private int batchParallelism = Runtime.getRuntime().availableProcessors(); // 批处理并发任务数
 
     public int getCount() {
         return count;
@@ -45,6 +67,204 @@ public class CommandLineArgs {
         this.answerFile = answerFile;
     }
 
+    public boolean isAppend() {
+        return append;
+    }
+
+    public void setAppend(boolean append) {
+        this.append = append;
+    }
+
+    public boolean isGzip() {
+        return gzip;
+    }
+
+    public void setGzip(boolean gzip) {
+        this.gzip = gzip;
+    }
+
+    public boolean isCompressRanges() {
+        return compressRanges;
+    }
+
+    public void setCompressRanges(boolean compressRanges) {
+        this.compressRanges = compressRanges;
+    }
+
+    public int[] getQuotas() {
+        return quotas;
+    }
+
+    public void setQuotas(int[] quotas) {
+        this.quotas = quotas;
+    }
+
+    public DifficultyProfile getDifficulty() {
+        return difficulty;
+    }
+
+    public void setDifficulty(DifficultyProfile difficulty) {
+        this.difficulty = difficulty;
+    }
+
+    public long getTimeBudgetMillis() {
+        return timeBudgetMillis;
+    }
+
+    public void setTimeBudgetMillis(long timeBudgetMillis) {
+        this.timeBudgetMillis = timeBudgetMillis;
+    }
+
+    public int getMaxOperators() {
+        return maxOperators;
+    }
+
+    public void setMaxOperators(int maxOperators) {
+        this.maxOperators = maxOperators;
+    }
+
+    public boolean isRanked() {
+        return ranked;
+    }
+
+    public void setRanked(boolean ranked) {
+        this.ranked = ranked;
+    }
+
+    public boolean isSidecar() {
+        return sidecar;
+    }
+
+    public void setSidecar(boolean sidecar) {
+        this.sidecar = sidecar;
+    }
+
+    public Long getSeed() {
+        return seed;
+    }
+
+    public void setSeed(Long seed) {
+        this.seed = seed;
+    }
+
+    public boolean hasSeed() {
+        return seed != null;
+    }
+
+    public boolean isIntegerAnswers() {
+        return integerAnswers;
+    }
+
+    public void setIntegerAnswers(boolean integerAnswers) {
+        this.integerAnswers = integerAnswers;
+    }
+
+    public Fraction getMaxAnswer() {
+        return maxAnswer;
+    }
+
+    public void setMaxAnswer(Fraction maxAnswer) {
+        this.maxAnswer = maxAnswer;
+    }
+
+    public Set<Fraction> getAnswers() {
+        return answers;
+    }
+
+    public void setAnswers(Set<Fraction> answers) {
+        this.answers = answers;
+    }
+
+    /**
+     * 判断是否指定了答案条件
+     */
+    public boolean hasAnswerFilter() {
+        return integerAnswers || maxAnswer != null || answers != null;
+    }
+
+    /**
+     * 组合全部答案条件
+     */
+    public Predicate<Fraction> resolveAnswerFilter() {
+        Predicate<Fraction> filter = value -> true;
+        if (integerAnswers) {
+            filter = filter.and(value -> value.getDenominator() == 1);
+        }
+        if (maxAnswer != null) {
+            Fraction max = maxAnswer;
+            filter = filter.and(value -> value.compareTo(max) <= 0);
+        }
+        if (answers != null) {
+            Set<Fraction> allowed = answers;
+            filter = filter.and(allowed::contains);
+        }
+        return filter;
+    }
+
+    public ExportFormat getFormat() {
+        return format;
+    }
+
+    public void setFormat(ExportFormat format) {
+        this.format = format;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public int getDedupMemoryMb() {
+        return dedupMemoryMb;
+    }
+
+    public void setDedupMemoryMb(int dedupMemoryMb) {
+        this.dedupMemoryMb = dedupMemoryMb;
+    }
+
+    /**
+     * 判断是否为分层生成模式
+     */
+    public boolean isStratified() {
+        return quotas != null || difficulty != null;
+    }
+
+    /**
+     * 获取分层配额：显式配额优先，否则按难度配置分配 -n 道题目
+     */
+    public int[] resolveQuotas() {
+        if (quotas != null) {
+            return quotas;
+        }
+        return difficulty != null ? difficulty.toQuotas(count) : null;
+    }
+
+    public String getBatchManifest() {
+        return batchManifest;
+    }
+
+    public void setBatchManifest(String batchManifest) {
+        this.batchManifest = batchManifest;
+    }
+
+    public int getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    public void setBatchParallelism(int batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * 判断是否为批处理模式
+     */
+    public boolean isBatchMode() {
+        return batchManifest != null;
+    }
+
     /**
      * 判断是否为判分模式
      * @return 如果设置了题目文件或答案文件，则为判分模式
@@ -79,10 +299,13 @@ public class CommandLineArgs {
      * 获取参数摘要，用于日志和调试
      */
     public String getSummary() {
-        if (isGradingMode()) {
+        if (isBatchMode()) {
+            return String.format("批处理模式: 任务清单=%s, 并发数=%d", batchManifest, batchParallelism);
+        } else if (isGradingMode()) {
             return String.format("判分模式: 题目文件=%s, 答案文件=%s", exerciseFile, answerFile);
         } else {
-            return String.format("生成模式: 数量=%d, 范围=%d", count, range);
+            return String.format("生成模式: 数量=%d, 范围=%d, 运算符上限=%d, 追加=%b, 压缩=%b, 格式=%s",
+                    count, range, maxOperators, append, gzip, format);
         }
     }
 
@@ -93,6 +316,24 @@ public class CommandLineArgs {
                 ", range=" + range +
                 ", exerciseFile='" + exerciseFile + '\'' +
                 ", answerFile='" + answerFile + '\'' +
+                ", append=" + append +
+                ", gzip=" + gzip +
+                ", sidecar=" + sidecar +
+                ", compressRanges=" + compressRanges +
+                ", quotas=" + Arrays.toString(quotas) +
+                ", difficulty=" + difficulty +
+                ", maxOperators=" + maxOperators +
+                ", ranked=" + ranked +
+                ", seed=" + seed +
+                ", timeBudgetMillis=" + timeBudgetMillis +
+                ", integerAnswers=" + integerAnswers +
+                ", maxAnswer=" + maxAnswer +
+                ", answers=" + answers +
+                ", format=" + format +
+                ", falsePositiveRate=" + falsePositiveRate +
+                ", dedupMemoryMb=" + dedupMemoryMb +
+                ", batchManifest='" + batchManifest + '\'' +
+                ", batchParallelism=" + batchParallelism +
                 ", isGradingMode=" + isGradingMode() +
                 '}';
     }
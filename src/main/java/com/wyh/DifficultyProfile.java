@@ -0,0 +1,67 @@
+package com.wyh;
+
+/**
+ * 难度配置
+ * 按运算符个数（1、2、3 个）分配题目比例，用于分层生成
+ */
+public enum DifficultyProfile {
+    EASY("简单", 6, 3, 1),
+    MEDIUM("中等", 3, 4, 3),
+    HARD("困难", 1, 3, 6);
+
+    private final String description;
+    private final int[] weights;
+
+    DifficultyProfile(String description, int... weights) {
+        this.description = description;
+        this.weights = weights;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * 把总题数按权重分配到各运算符个数，返回以运算符个数为下标的配额数组
+     * 采用最大余数法，保证各层配额之和恰好等于总数
+     */
+    public int[] toQuotas(int total) {
+        int weightSum = 0;
+        for (int w : weights) {
+            weightSum += w;
+        }
+
+        int[] quotas = new int[weights.length + 1];
+        long[] remainders = new long[weights.length + 1];
+        int assigned = 0;
+        for (int i = 0; i < weights.length; i++) {
+            long share = (long) total * weights[i];
+            quotas[i + 1] = (int) (share / weightSum);
+            remainders[i + 1] = share % weightSum;
+            assigned += quotas[i + 1];
+        }
+
+        while (assigned < total) {
+            int best = 1;
+            for (int i = 2; i < remainders.length; i++) {
+                if (remainders[i] > remainders[best]) {
+                    best = i;
+                }
+            }
+            quotas[best]++;
+            remainders[best] = -1;
+            assigned++;
+        }
+        return quotas;
+    }
+
+    public static DifficultyProfile fromName(String name) {
+        for (DifficultyProfile profile : values()) {
+            if (profile.name().equalsIgnoreCase(name)) {
+                return profile;
+            }
+        }
+        throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                "未知难度: " + name + "，可选值为 easy、medium、hard");
+    }
+}
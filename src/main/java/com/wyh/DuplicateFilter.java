@@ -0,0 +1,471 @@
+package com.wyh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 两级题目去重过滤器
+ * 第一级为内存中的布隆过滤器：未命中即可确定是新题目，直接加入；
+ * 命中时可能是误判，由调用方攒成批次交给 {@link #resolve(long[], int)} 在第二级精确确认。
+ * 第二级为精确的键集合：最近加入的键保存在内存哈希表中，超过内存预算后排序写入磁盘（有序段文件）。
+ * 每个段文件在内存中保留稀疏索引（每 {@value #PAGE_KEYS} 个键一页，记录每页的第一个键，约占段文件大小的 1/512），
+ * 批量确认时按索引二分定位到页，只读取批次中的键所在的页，磁盘读取量与批次大小成正比，与已写入磁盘的键数无关。
+ *
+ * 键为规范化键的 64 位哈希（见 {@link CanonicalKeyIndex#hash(String)}），
+ * 哈希碰撞只会让一道新题目被当成重复而丢弃，输出中不会出现重复题目。
+ */
+public class DuplicateFilter implements Closeable {
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    public static final long DEFAULT_MEMORY_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+
+    // 段文件超过该数量时合并为一个，避免批量确认时扫描过多文件
+    private static final int MAX_RUNS = 16;
+    private static final int IO_BUFFER_BYTES = 1 << 16;
+    private static final long EMPTY = 0L;
+    private static final int INITIAL_TABLE_SLOTS = 1024;
+    // 段文件按页建稀疏索引，一页 4KB
+    private static final int PAGE_KEYS = 512;
+    private static final int WINDOW_PAGES = IO_BUFFER_BYTES / (PAGE_KEYS * Long.BYTES);
+
+    private final long[] bloom;
+    private final long bloomMask;
+    private final int hashFunctions;
+
+    private final Path spillDir;
+    private final int maxTableSlots;
+    private long[] table;
+    private int tableSize;
+    private final List<Run> runs = new ArrayList<>();
+    private long size;
+
+    // 磁盘上的有序段；pageFirst[p] 为第 p 页（第 p * PAGE_KEYS 个键起）的第一个键
+    private static final class Run {
+        final Path path;
+        final long count;
+        final long min;
+        final long max;
+        final long[] pageFirst;
+
+        Run(Path path, long count, long min, long max, long[] pageFirst) {
+            this.path = path;
+            this.count = count;
+            this.min = min;
+            this.max = max;
+            this.pageFirst = pageFirst;
+        }
+    }
+
+    public DuplicateFilter(long expectedKeys) {
+        this(expectedKeys, DEFAULT_FALSE_POSITIVE_RATE, DEFAULT_MEMORY_BYTES, null);
+    }
+
+    /**
+     * @param expectedKeys 预计加入的键数量，用于确定布隆过滤器大小
+     * @param falsePositiveRate 布隆过滤器的目标误判率，在 (0, 1) 之间
+     * @param memoryBytes 内存预算：布隆过滤器最多占一半，其余用于内存中的精确键集合
+     * @param spillDir 段文件目录，为 null 时使用系统临时目录
+     */
+    public DuplicateFilter(long expectedKeys, double falsePositiveRate, long memoryBytes, Path spillDir) {
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("误判率必须在 0 到 1 之间");
+        }
+        if (memoryBytes < 1024 * 1024) {
+            throw new IllegalArgumentException("去重内存预算不能小于 1MB");
+        }
+
+        // m = -n·ln(p) / (ln2)^2，取 2 的幂便于取模；超出一半预算时降低精度
+        double bits = -Math.max(1, expectedKeys) * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        long bloomBits = Long.highestOneBit(Math.max(64L, (long) Math.ceil(bits)) * 2 - 1);
+        bloomBits = Math.min(bloomBits, 1L << 36);
+        while (bloomBits / 8 > memoryBytes / 2) {
+            bloomBits >>>= 1;
+        }
+        this.bloom = new long[(int) (bloomBits / 64)];
+        this.bloomMask = (long) bloom.length * 64 - 1;
+        long optimal = Math.round(bloomBits / (double) Math.max(1, expectedKeys) * Math.log(2));
+        this.hashFunctions = (int) Math.max(1, Math.min(16, optimal));
+
+        long tableBytes = memoryBytes - (long) bloom.length * Long.BYTES;
+        this.maxTableSlots = Integer.highestOneBit((int) Math.min(1 << 30, Math.max(16, tableBytes / Long.BYTES)));
+        // 内存集合按需扩容，达到预算上限后才写入磁盘，少量题目时不预先占满预算
+        this.table = new long[Math.min(maxTableSlots, INITIAL_TABLE_SLOTS)];
+        this.spillDir = spillDir != null ? spillDir : Paths.get(System.getProperty("java.io.tmpdir"));
+    }
+
+    /**
+     * 快速路径：布隆过滤器确定键不存在时直接加入并返回 true；
+     * 返回 false 表示键可能已存在，调用方应把它放入批次交给 {@link #resolve(long[], int)}
+     */
+    public boolean addIfDefinitelyNew(long hash) throws IOException {
+        if (mightContain(hash)) {
+            return false;
+        }
+        insert(hash);
+        return true;
+    }
+
+    /**
+     * 精确确认一批可能重复的键，新键会被加入
+     * @return 与输入一一对应，true 表示新键；批次内部重复时只有第一次出现为 true
+     */
+    public boolean[] resolve(long[] hashes, int length) throws IOException {
+        long[] unique = Arrays.copyOf(hashes, length);
+        Arrays.sort(unique);
+        int uniqueCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (uniqueCount == 0 || unique[uniqueCount - 1] != unique[i]) {
+                unique[uniqueCount++] = unique[i];
+            }
+        }
+
+        boolean[] known = new boolean[uniqueCount];
+        for (int i = 0; i < uniqueCount; i++) {
+            known[i] = tableContains(unique[i]);
+        }
+        for (Run run : runs) {
+            markKnown(run, unique, uniqueCount, known);
+        }
+
+        boolean[] isNew = new boolean[length];
+        for (int i = 0; i < length; i++) {
+            int position = Arrays.binarySearch(unique, 0, uniqueCount, hashes[i]);
+            if (!known[position]) {
+                known[position] = true;
+                insert(hashes[i]);
+                isNew[i] = true;
+            }
+        }
+        return isNew;
+    }
+
+    public boolean mightContain(long hash) {
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = (hash + i * h2) & bloomMask;
+            if ((bloom[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 已加入的键数量
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 已写入磁盘的段文件数量
+     */
+    public int getRunCount() {
+        return runs.size();
+    }
+
+    /**
+     * 删除全部段文件
+     */
+    @Override
+    public void close() throws IOException {
+        for (Run run : runs) {
+            Files.deleteIfExists(run.path);
+        }
+        runs.clear();
+    }
+
+    private void insert(long hash) throws IOException {
+        long h2 = (hash >>> 32) | 1;
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = (hash + i * h2) & bloomMask;
+            bloom[(int) (bit >>> 6)] |= 1L << bit;
+        }
+
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = mix(hash) & mask;
+        while (t[slot] != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = hash;
+        size++;
+        if (++tableSize >= t.length / 4 * 3) {
+            if (t.length < maxTableSlots) {
+                rehash(t.length * 2);
+            } else {
+                spill();
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = table;
+        long[] t = new long[newCapacity];
+        int mask = newCapacity - 1;
+        for (long h : old) {
+            if (h != EMPTY) {
+                int slot = mix(h) & mask;
+                while (t[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                t[slot] = h;
+            }
+        }
+        table = t;
+    }
+
+    private boolean tableContains(long hash) {
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = mix(hash) & mask;
+        while (t[slot] != EMPTY) {
+            if (t[slot] == hash) {
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return false;
+    }
+
+    // 内存集合写满后排序写成一个段文件，然后清空
+    private void spill() throws IOException {
+        long[] sorted = new long[tableSize];
+        int n = 0;
+        for (long h : table) {
+            if (h != EMPTY) {
+                sorted[n++] = h;
+            }
+        }
+        Arrays.sort(sorted);
+
+        long[] pageFirst = new long[(n + PAGE_KEYS - 1) / PAGE_KEYS];
+        for (int p = 0; p < pageFirst.length; p++) {
+            pageFirst[p] = sorted[p * PAGE_KEYS];
+        }
+
+        Path path = Files.createTempFile(spillDir, "wyh-dedup-", ".run");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = newBuffer();
+            for (long h : sorted) {
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+                buffer.putLong(h);
+            }
+            drain(channel, buffer);
+        }
+        runs.add(new Run(path, n, sorted[0], sorted[n - 1], pageFirst));
+        Arrays.fill(table, EMPTY);
+        tableSize = 0;
+
+        if (runs.size() > MAX_RUNS) {
+            mergeRuns();
+        }
+    }
+
+    // 在一个段文件中查找批次的键（已按升序排列）：按稀疏索引定位每个键所在的页，只读取用到的页；
+    // 相距不超过一个缓冲区（WINDOW_PAGES 页）的页合并为一次读取，批次较密时接近顺序读，较疏时只读零散的页
+    private void markKnown(Run run, long[] unique, int uniqueCount, boolean[] known) throws IOException {
+        if (uniqueCount == 0 || run.max < unique[0] || run.min > unique[uniqueCount - 1]) {
+            return;
+        }
+        int[] pages = new int[uniqueCount];
+        for (int i = 0; i < uniqueCount; i++) {
+            long key = unique[i];
+            if (known[i] || key < run.min || key > run.max) {
+                pages[i] = -1;
+            } else {
+                pages[i] = pageOf(run, key);
+                if (run.pageFirst[pages[i]] == key) {
+                    known[i] = true;
+                    pages[i] = -1;
+                }
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(run.path, StandardOpenOption.READ)) {
+            ByteBuffer window = newBuffer();
+            int firstPage = 0;
+            int loadedPages = 0;
+            for (int i = 0; i < uniqueCount; i++) {
+                int p = pages[i];
+                if (p < 0) {
+                    continue;
+                }
+                if (p >= firstPage + loadedPages) {
+                    int lastPage = p;
+                    for (int j = i + 1; j < uniqueCount && (pages[j] < 0 || pages[j] < p + WINDOW_PAGES); j++) {
+                        lastPage = Math.max(lastPage, pages[j]);
+                    }
+                    firstPage = p;
+                    loadedPages = lastPage - p + 1;
+                    readPages(channel, run, firstPage, loadedPages, window);
+                }
+                int offset = (p - firstPage) * PAGE_KEYS;
+                int keys = (int) Math.min(PAGE_KEYS, run.count - (long) p * PAGE_KEYS);
+                known[i] = windowContains(window, offset, keys, unique[i]);
+            }
+        }
+    }
+
+    // 第一个键不大于 key 的最后一页；调用方保证 key >= run.min
+    private static int pageOf(Run run, long key) {
+        int index = Arrays.binarySearch(run.pageFirst, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private static void readPages(FileChannel channel, Run run, int firstPage, int pageCount, ByteBuffer window) throws IOException {
+        long first = (long) firstPage * PAGE_KEYS;
+        int keys = (int) Math.min((long) pageCount * PAGE_KEYS, run.count - first);
+        long position = first * Long.BYTES;
+        window.clear();
+        window.limit(keys * Long.BYTES);
+        while (window.hasRemaining()) {
+            if (channel.read(window, position + window.position()) < 0) {
+                throw new IOException("去重段文件已截断");
+            }
+        }
+    }
+
+    private static boolean windowContains(ByteBuffer window, int offset, int keys, long key) {
+        int low = offset;
+        int high = offset + keys - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long value = window.getLong(mid * Long.BYTES);
+            if (value < key) {
+                low = mid + 1;
+            } else if (value > key) {
+                high = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // 多路归并全部段文件为一个
+    private void mergeRuns() throws IOException {
+        Path path = Files.createTempFile(spillDir, "wyh-dedup-", ".run");
+        List<RunReader> readers = new ArrayList<>(runs.size());
+        long count = 0;
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        long[] pageFirst = new long[16];
+        int pages = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            for (Run run : runs) {
+                readers.add(new RunReader(run));
+                min = Math.min(min, run.min);
+                max = Math.max(max, run.max);
+            }
+            ByteBuffer buffer = newBuffer();
+            while (true) {
+                RunReader smallest = null;
+                for (RunReader reader : readers) {
+                    if (reader.hasNext() && (smallest == null || reader.peek() < smallest.peek())) {
+                        smallest = reader;
+                    }
+                }
+                if (smallest == null) {
+                    break;
+                }
+                if (!buffer.hasRemaining()) {
+                    drain(channel, buffer);
+                }
+                long value = smallest.next();
+                if (count % PAGE_KEYS == 0) {
+                    if (pages == pageFirst.length) {
+                        pageFirst = Arrays.copyOf(pageFirst, pages * 2);
+                    }
+                    pageFirst[pages++] = value;
+                }
+                buffer.putLong(value);
+                count++;
+            }
+            drain(channel, buffer);
+        } finally {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+
+        for (Run run : runs) {
+            Files.deleteIfExists(run.path);
+        }
+        runs.clear();
+        runs.add(new Run(path, count, min, max, Arrays.copyOf(pageFirst, pages)));
+    }
+
+    // 段文件的缓冲顺序读取器
+    private static final class RunReader implements Closeable {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = newBuffer();
+        private long remaining;
+
+        RunReader(Run run) throws IOException {
+            this.channel = FileChannel.open(run.path, StandardOpenOption.READ);
+            this.remaining = run.count;
+            buffer.flip();
+        }
+
+        boolean hasNext() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            if (remaining == 0) {
+                return false;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), remaining * Long.BYTES));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("去重段文件已截断");
+                }
+            }
+            buffer.flip();
+            remaining -= buffer.limit() / Long.BYTES;
+            return true;
+        }
+
+        long peek() {
+            return buffer.getLong(buffer.position());
+        }
+
+        long next() {
+            return buffer.getLong();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+
+    private static ByteBuffer newBuffer() {
+        return ByteBuffer.allocateDirect(IO_BUFFER_BYTES).order(ByteOrder.nativeOrder());
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static int mix(long hash) {
+        return (int) (hash ^ (hash >>> 32));
+    }
+}
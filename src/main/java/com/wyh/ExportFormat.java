@@ -0,0 +1,32 @@
+package com.wyh;
+
+/**
+ * 题目导出格式
+ * TXT 为原有的 Exercises.txt / Answers.txt 两个按行对齐的文本文件；
+ * NDJSON 和 BINARY 把题目和答案写在同一条记录里，由 {@link ProblemExporter} 输出
+ */
+public enum ExportFormat {
+    TXT("txt"),
+    NDJSON("ndjson"),
+    BINARY("bin");
+
+    private final String extension;
+
+    ExportFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ExportFormat fromName(String name) {
+        for (ExportFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name) || format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                "未知输出格式: " + name + "，可选值为 txt、ndjson、bin");
+    }
+}
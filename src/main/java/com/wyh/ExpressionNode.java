@@ -1,66 +1,280 @@
 package com.wyh;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * 表达式树节点（不可变）
+ * 通过 {@link #leaf(Fraction)} 和 {@link #of(Operator, ExpressionNode, ExpressionNode)} 创建的节点经过哈希一致化：
+ * 结构相同的子树（可交换运算符不区分左右顺序）在全部生成的题目之间共享同一个节点，
+ * 节点上缓存的求值结果、规范化键及其 64 位哈希、中缀文本只计算一次。
+ *
+ * 驻留表是固定大小的直接映射表：槽位冲突时新节点覆盖旧节点，常用的小子树会不断被重新写入而保留下来。
+ * 节点不可变，读写驻留表无需加锁，被覆盖的节点仍然有效，只是不再被新表达式共享。
+ *
+ * 求值、中缀渲染和规范化键都用显式栈遍历，不递归，运算符很多的深层表达式也不会栈溢出。
+ */
 public class ExpressionNode {
     public enum NodeType { NUMBER, OPERATOR }
     public enum Operator { ADD, SUBTRACT, MULTIPLY, DIVIDE }
 
-    private NodeType type;
-    private Fraction value;
-    private Operator operator;
-    private ExpressionNode left;
-    private ExpressionNode right;
+    // 只驻留不超过该运算符个数的子树，可用 -Dwyh.intern.ops 调整。
+    // 实测（-r 10 到 -r 1000）驻留运算符节点时查表的缓存未命中比新分配节点更慢，默认只驻留叶节点
+    private static final int MAX_INTERNED_OPERATORS = Integer.getInteger("wyh.intern.ops", 0);
+
+    // 驻留表槽位数（2 的幂）
+    private static final int LEAF_SLOTS = 1 << 16;
+    private static final int OPERATOR_SLOTS = 1 << 16;
+
+    // 驻留键由运算符和两个子节点编号拼成 64 位整数，编号取 31 位；
+    // 编号用完后进入下一轮次，只有同一轮次的节点才能组合驻留，避免编号重复导致错误共享
+    private static final int ID_BITS = 31;
+    private static final long ID_MASK = (1L << ID_BITS) - 1;
+    private static final long NOT_INTERNED = -1;
+
+    // 高位为轮次，低 31 位为编号
+    private static final AtomicLong NEXT_STAMP = new AtomicLong();
+    private static final ExpressionNode[] LEAVES = new ExpressionNode[LEAF_SLOTS];
+    private static final ExpressionNode[] OPERATORS = new ExpressionNode[OPERATOR_SLOTS];
+
+    private final NodeType type;
+    private final Fraction value;
+    private final Operator operator;
+    private final ExpressionNode left;
+    private final ExpressionNode right;
+    private final int operatorCount;
+    // 驻留戳（轮次与编号）与驻留键，未驻留的节点为 -1
+    private final long stamp;
+    private final long internKey;
+
+    // 以下为惰性缓存：并发下可能重复计算，但结果相同且均为不可变对象
+    // 求值结果缓存，null 表示尚未求值；无效表达式缓存为 Fraction.INVALID
+    private Fraction evaluated;
+    private String infix;
+    private String canonicalKey;
+    private long canonicalHash;
 
     // 叶节点构造函数
     public ExpressionNode(Fraction value) {
-        this.type = NodeType.NUMBER;
-        this.value = value;
+        this(value, NOT_INTERNED, 0L);
     }
 
     // 运算符节点构造函数
     public ExpressionNode(Operator operator, ExpressionNode left, ExpressionNode right) {
+        this(operator, left, right, NOT_INTERNED, 0L);
+    }
+
+    private ExpressionNode(Fraction value, long stamp, long internKey) {
+        this.type = NodeType.NUMBER;
+        this.value = value;
+        this.operator = null;
+        this.left = null;
+        this.right = null;
+        this.operatorCount = 0;
+        this.stamp = stamp;
+        this.internKey = internKey;
+    }
+
+    private ExpressionNode(Operator operator, ExpressionNode left, ExpressionNode right, long stamp, long internKey) {
         this.type = NodeType.OPERATOR;
+        this.value = null;
         this.operator = operator;
         this.left = left;
         this.right = right;
+        this.operatorCount = 1 + left.operatorCount + right.operatorCount;
+        this.stamp = stamp;
+        this.internKey = internKey;
+    }
+
+    /**
+     * 获取共享的叶节点
+     */
+    public static ExpressionNode leaf(Fraction value) {
+        long key = ((long) value.getNumerator() << 32) | (value.getDenominator() & 0xFFFFFFFFL);
+        int slot = slotOf(key, LEAF_SLOTS);
+        ExpressionNode node = LEAVES[slot];
+        if (node != null && node.internKey == key && epochOf(node.stamp) == epochOf(NEXT_STAMP.get())) {
+            return node;
+        }
+        node = new ExpressionNode(value, NEXT_STAMP.getAndIncrement(), key);
+        LEAVES[slot] = node;
+        return node;
+    }
+
+    /**
+     * 获取共享的运算符节点；加法和乘法不区分左右子树顺序，
+     * 返回的节点可能是先前以相反顺序创建的节点，其值不变
+     */
+    public static ExpressionNode of(Operator operator, ExpressionNode left, ExpressionNode right) {
+        if (left.stamp == NOT_INTERNED || right.stamp == NOT_INTERNED
+                || epochOf(left.stamp) != epochOf(right.stamp)
+                || 1 + left.operatorCount + right.operatorCount > MAX_INTERNED_OPERATORS) {
+            return new ExpressionNode(operator, left, right);
+        }
+
+        long first = left.stamp & ID_MASK;
+        long second = right.stamp & ID_MASK;
+        if ((operator == Operator.ADD || operator == Operator.MULTIPLY) && first > second) {
+            long temp = first;
+            first = second;
+            second = temp;
+        }
+        long key = ((long) operator.ordinal() << (2 * ID_BITS)) | (first << ID_BITS) | second;
+        long epoch = epochOf(left.stamp);
+
+        int slot = slotOf(key, OPERATOR_SLOTS);
+        ExpressionNode node = OPERATORS[slot];
+        if (node != null && node.internKey == key && epochOf(node.stamp) == epoch) {
+            return node;
+        }
+        long stamp = NEXT_STAMP.getAndIncrement();
+        if (epochOf(stamp) != epoch) {
+            // 子节点属于上一轮次，编号可能已被重复使用
+            return new ExpressionNode(operator, left, right);
+        }
+        node = new ExpressionNode(operator, left, right, stamp, key);
+        OPERATORS[slot] = node;
+        return node;
+    }
+
+    private static long epochOf(long stamp) {
+        return stamp >>> ID_BITS;
+    }
+
+    private static int slotOf(long key, int slots) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 40) & (slots - 1);
+    }
+
+    /**
+     * 清空驻留表，已创建的节点不受影响
+     */
+    public static void clearInternTable() {
+        Arrays.fill(LEAVES, null);
+        Arrays.fill(OPERATORS, null);
     }
 
     public Fraction evaluate() {
+        Fraction result = tryEvaluate();
+        if (!result.isValid()) {
+            throw new ArithmeticException("除零错误或数值溢出");
+        }
+        return result;
+    }
+
+    /**
+     * 不抛异常的求值，除数为零或溢出时返回 {@link Fraction#INVALID}；结果在节点上缓存
+     * 用显式栈做后序遍历，子节点都求值后再计算父节点，深层表达式不会栈溢出，耗时与节点数成正比
+     */
+    public Fraction tryEvaluate() {
+        Fraction result = evaluated;
+        if (result != null) {
+            return result;
+        }
         if (type == NodeType.NUMBER) {
+            evaluated = value;
             return value;
         }
 
-        Fraction leftVal = left.evaluate();
-        Fraction rightVal = right.evaluate();
+        ArrayDeque<ExpressionNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            ExpressionNode node = stack.peek();
+            if (node.evaluated != null) {
+                stack.pop();
+                continue;
+            }
+            if (node.type == NodeType.NUMBER) {
+                node.evaluated = node.value;
+                stack.pop();
+                continue;
+            }
+            Fraction leftVal = node.left.evaluated;
+            Fraction rightVal = node.right.evaluated;
+            if (leftVal == null || rightVal == null) {
+                if (leftVal == null) {
+                    stack.push(node.left);
+                }
+                if (rightVal == null) {
+                    stack.push(node.right);
+                }
+                continue;
+            }
+            node.evaluated = node.apply(leftVal, rightVal);
+            stack.pop();
+        }
+        return evaluated;
+    }
 
+    private Fraction apply(Fraction leftVal, Fraction rightVal) {
         switch (operator) {
-            case ADD: return leftVal.add(rightVal);
-            case SUBTRACT: return leftVal.subtract(rightVal);
-            case MULTIPLY: return leftVal.multiply(rightVal);
-            case DIVIDE: return leftVal.divide(rightVal);
-            default: throw new IllegalStateException("未知运算符");
+            case ADD: return leftVal.tryAdd(rightVal);
+            case SUBTRACT: return leftVal.trySubtract(rightVal);
+            case MULTIPLY: return leftVal.tryMultiply(rightVal);
+            case DIVIDE: return leftVal.tryDivide(rightVal);
+            default: return Fraction.INVALID;
         }
     }
 
+    /**
+     * 表达式能否求值（无除零、无溢出）
+     */
+    public boolean isValid() {
+        return tryEvaluate().isValid();
+    }
+
     public String toInfixString() {
+        String result = infix;
+        if (result == null) {
+            result = renderInfix();
+            infix = result;
+        }
+        return result;
+    }
+
+    // 显式栈按从左到右的顺序把文本片段写入同一个缓冲区，子树不单独拼接字符串
+    private String renderInfix() {
         if (type == NodeType.NUMBER) {
             return value.toString();
         }
 
-        String leftStr = left.toInfixString();
-        String rightStr = right.toInfixString();
+        StringBuilder out = new StringBuilder(operatorCount * 8 + 8);
+        // 栈中元素为待展开的节点或待输出的文本
+        ArrayDeque<Object> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            Object item = stack.pop();
+            if (item instanceof String) {
+                out.append((String) item);
+                continue;
+            }
+            ExpressionNode node = (ExpressionNode) item;
+            if (node.infix != null) {
+                out.append(node.infix);
+                continue;
+            }
+            if (node.type == NodeType.NUMBER) {
+                out.append(node.value.toString());
+                continue;
+            }
 
-        // 根据优先级决定是否加括号
-        if (needsParentheses(left, false)) {
-            leftStr = "(" + leftStr + ")";
-        }
-        if (needsParentheses(right, true)) {
-            rightStr = "(" + rightStr + ")";
+            // 根据优先级决定是否加括号；后入栈的先输出
+            boolean leftParens = node.needsParentheses(node.left, false);
+            boolean rightParens = node.needsParentheses(node.right, true);
+            if (rightParens) {
+                stack.push(")");
+            }
+            stack.push(node.right);
+            stack.push(rightParens ? " " + node.getOperatorSymbol() + " (" : " " + node.getOperatorSymbol() + " ");
+            if (leftParens) {
+                stack.push(")");
+            }
+            stack.push(node.left);
+            if (leftParens) {
+                stack.push("(");
+            }
         }
-
-        String opStr = getOperatorSymbol();
-        return leftStr + " " + opStr + " " + rightStr;
+        return out.toString();
     }
 
     private boolean needsParentheses(ExpressionNode child, boolean isRight) {
@@ -105,28 +319,70 @@ public class ExpressionNode {
 
     // 生成规范化键用于去重
     public String getCanonicalKey() {
-        if (type == NodeType.NUMBER) {
-            return value.toString();
+        String result = canonicalKey;
+        if (result == null) {
+            result = buildCanonicalKey();
         }
+        return result;
+    }
 
-        String leftKey = left.getCanonicalKey();
-        String rightKey = right.getCanonicalKey();
+    // 可交换运算符要按子树键的大小排序，因此用显式栈后序遍历，为每个子树缓存键后再拼接父节点的键
+    private String buildCanonicalKey() {
+        ArrayDeque<ExpressionNode> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            ExpressionNode node = stack.peek();
+            if (node.canonicalKey != null) {
+                stack.pop();
+                continue;
+            }
+            if (node.type == NodeType.NUMBER) {
+                node.canonicalKey = node.value.toString();
+                stack.pop();
+                continue;
+            }
+            String leftKey = node.left.canonicalKey;
+            String rightKey = node.right.canonicalKey;
+            if (leftKey == null || rightKey == null) {
+                if (leftKey == null) {
+                    stack.push(node.left);
+                }
+                if (rightKey == null) {
+                    stack.push(node.right);
+                }
+                continue;
+            }
 
-        // 对可交换运算符进行排序
-        if (operator == Operator.ADD || operator == Operator.MULTIPLY) {
-            if (leftKey.compareTo(rightKey) > 0) {
-                return operator.name() + "(" + rightKey + "," + leftKey + ")";
+            // 对可交换运算符进行排序
+            if ((node.operator == Operator.ADD || node.operator == Operator.MULTIPLY)
+                    && leftKey.compareTo(rightKey) > 0) {
+                String temp = leftKey;
+                leftKey = rightKey;
+                rightKey = temp;
             }
+            String name = node.operator.name();
+            node.canonicalKey = new StringBuilder(name.length() + leftKey.length() + rightKey.length() + 3)
+                    .append(name).append('(').append(leftKey).append(',').append(rightKey).append(')')
+                    .toString();
+            stack.pop();
         }
+        return canonicalKey;
+    }
 
-        return operator.name() + "(" + leftKey + "," + rightKey + ")";
+    /**
+     * 规范化键的 64 位哈希，与 {@link CanonicalKeyIndex#hash(String)} 一致
+     */
+    public long getCanonicalHash() {
+        long result = canonicalHash;
+        if (result == 0) {
+            result = CanonicalKeyIndex.hash(getCanonicalKey());
+            canonicalHash = result;
+        }
+        return result;
     }
 
     public int getOperatorCount() {
-        if (type == NodeType.NUMBER) {
-            return 0;
-        }
-        return 1 + left.getOperatorCount() + right.getOperatorCount();
+        return operatorCount;
     }
 
     // Getters
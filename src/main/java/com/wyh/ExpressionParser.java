@@ -0,0 +1,144 @@
+package com.wyh;
+
+/**
+ * 题目表达式解析器
+ * 解析 Exercises.txt 中的中缀表达式（如 {@code (1/2 + 3'1/4) × 2 ÷ 5}）并求值。
+ * 数字支持整数、真分数 a/b 和带分数 w'a/b；运算符为 + - × ÷，支持括号。
+ * 解析失败、除零或溢出时返回 {@link Fraction#INVALID}，不抛出异常。
+ */
+public final class ExpressionParser {
+    private final String text;
+    private int pos;
+    private boolean failed;
+
+    private ExpressionParser(String text) {
+        this.text = text;
+    }
+
+    public static Fraction evaluate(String expression) {
+        ExpressionParser parser = new ExpressionParser(expression);
+        Fraction result = parser.parseExpression();
+        parser.skipSpaces();
+        if (parser.failed || parser.pos != parser.text.length()) {
+            return Fraction.INVALID;
+        }
+        return result;
+    }
+
+    // expression := term (('+' | '-') term)*
+    private Fraction parseExpression() {
+        Fraction result = parseTerm();
+        while (!failed) {
+            skipSpaces();
+            char c = peek();
+            if (c == '+') {
+                pos++;
+                result = result.tryAdd(parseTerm());
+            } else if (c == '-') {
+                pos++;
+                result = result.trySubtract(parseTerm());
+            } else {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // term := factor (('×' | '÷') factor)*
+    private Fraction parseTerm() {
+        Fraction result = parseFactor();
+        while (!failed) {
+            skipSpaces();
+            char c = peek();
+            if (c == '×' || c == '*') {
+                pos++;
+                result = result.tryMultiply(parseFactor());
+            } else if (c == '÷') {
+                pos++;
+                result = result.tryDivide(parseFactor());
+            } else {
+                break;
+            }
+        }
+        return result;
+    }
+
+    // factor := '(' expression ')' | number
+    private Fraction parseFactor() {
+        skipSpaces();
+        if (peek() == '(') {
+            pos++;
+            Fraction inner = parseExpression();
+            skipSpaces();
+            if (peek() != ')') {
+                return fail();
+            }
+            pos++;
+            return inner;
+        }
+        return parseNumber();
+    }
+
+    // number := int | int '/' int | int '\'' int '/' int
+    private Fraction parseNumber() {
+        long first = parseInteger();
+        if (failed) {
+            return Fraction.INVALID;
+        }
+        if (peek() == '\'') {
+            pos++;
+            long numerator = parseInteger();
+            if (failed || peek() != '/') {
+                return fail();
+            }
+            pos++;
+            long denominator = parseInteger();
+            if (failed || denominator == 0) {
+                return fail();
+            }
+            return Fraction.of(first * denominator + numerator, denominator);
+        }
+        if (peek() == '/') {
+            pos++;
+            long denominator = parseInteger();
+            if (failed || denominator == 0) {
+                return fail();
+            }
+            return Fraction.of(first, denominator);
+        }
+        return Fraction.of(first, 1);
+    }
+
+    private long parseInteger() {
+        int start = pos;
+        long value = 0;
+        // 只接受 ASCII 数字；Character.isDigit 还会接受全角、阿拉伯-印度等数字，减去 '0' 后得到错误的值
+        while (pos < text.length() && text.charAt(pos) >= '0' && text.charAt(pos) <= '9') {
+            value = value * 10 + (text.charAt(pos) - '0');
+            if (value > Integer.MAX_VALUE) {
+                failed = true;
+                return 0;
+            }
+            pos++;
+        }
+        if (pos == start) {
+            failed = true;
+        }
+        return value;
+    }
+
+    private Fraction fail() {
+        failed = true;
+        return Fraction.INVALID;
+    }
+
+    private char peek() {
+        return pos < text.length() ? text.charAt(pos) : '\0';
+    }
+
+    private void skipSpaces() {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+    }
+}
@@ -0,0 +1,289 @@
+package com.wyh;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 规范化表达式空间的编号（排名 / 反排名）
+ * 对给定数值范围，把运算符个数为 k 的全部规范化表达式（可交换运算符不区分左右顺序）与 [0, size(k)) 中的整数一一对应：
+ * 先按运算符、再按左子树的运算符个数划分区块，区块内按左右子树的编号组合编号；
+ * 加法和乘法的两棵子树规模相同时只取编号不减的组合，规模不同时规模小的放左边，因此每个规范化键恰好对应一个编号。
+ *
+ * 编号空间只按结构计数，不考虑取值约束；反排名得到的表达式可能不满足非负、真分数除法等约束，由调用方校验。
+ * 空间超过 {@link #MAX_SPACE} 的层不编号，叶节点（范围内不同的数值）超过 {@link #MAX_LEAVES} 个时整体不编号。
+ */
+public class ExpressionRanker {
+    public static final long MAX_SPACE = 1L << 60;
+    public static final int MAX_LEAVES = 1 << 20;
+
+    private static final ExpressionNode.Operator[] OPERATORS = ExpressionNode.Operator.values();
+    private static final long TOO_LARGE = -1;
+
+    // 叶节点数值按 分子<<32|分母 打包后排序，下标即叶节点编号
+    private final long[] leaves;
+    // counts[k] 为 k 个运算符的规范化表达式个数，超过 MAX_SPACE 时为 -1
+    private final long[] counts;
+
+    public ExpressionRanker(int range, int maxOperators) {
+        this.leaves = buildLeaves(range);
+        this.counts = new long[maxOperators + 1];
+        counts[0] = leaves.length > 0 ? leaves.length : TOO_LARGE;
+        for (int k = 1; k <= maxOperators; k++) {
+            long total = 0;
+            for (ExpressionNode.Operator op : OPERATORS) {
+                for (int i = 0; i <= lastSplit(op, k); i++) {
+                    total = add(total, blockSize(op, k, i));
+                }
+            }
+            counts[k] = total;
+        }
+    }
+
+    /**
+     * 运算符个数为 operatorCount 的规范化表达式个数；超过 {@link #MAX_SPACE} 时为 -1
+     */
+    public long size(int operatorCount) {
+        return counts[operatorCount];
+    }
+
+    public boolean isRankable(int operatorCount) {
+        return counts[operatorCount] != TOO_LARGE;
+    }
+
+    public int getLeafCount() {
+        return leaves.length;
+    }
+
+    /**
+     * 把 [0, size(operatorCount)) 中的编号还原为规范化表达式
+     */
+    public ExpressionNode unrank(int operatorCount, long rank) {
+        if (operatorCount == 0) {
+            long packed = leaves[(int) rank];
+            return ExpressionNode.leaf(new Fraction((int) (packed >>> 32), (int) packed));
+        }
+        for (ExpressionNode.Operator op : OPERATORS) {
+            for (int i = 0; i <= lastSplit(op, operatorCount); i++) {
+                long block = blockSize(op, operatorCount, i);
+                if (rank >= block) {
+                    rank -= block;
+                    continue;
+                }
+                int j = operatorCount - 1 - i;
+                long leftRank;
+                long rightRank;
+                if (isCommutative(op) && i == j) {
+                    long n = counts[i];
+                    leftRank = triangularRow(rank, n);
+                    rightRank = leftRank + rank - triangularOffset(leftRank, n);
+                } else {
+                    leftRank = rank / counts[j];
+                    rightRank = rank % counts[j];
+                }
+                return ExpressionNode.of(op, unrank(i, leftRank), unrank(j, rightRank));
+            }
+        }
+        throw new IllegalArgumentException("编号超出范围: " + rank);
+    }
+
+    /**
+     * 表达式在其运算符个数一层中的编号，与 {@link #unrank(int, long)} 互逆；叶节点不在范围内时返回 -1
+     */
+    public long rank(ExpressionNode node) {
+        if (node.getType() == ExpressionNode.NodeType.NUMBER) {
+            Fraction value = node.getValue();
+            int index = Arrays.binarySearch(leaves, pack(value.getNumerator(), value.getDenominator()));
+            return index >= 0 ? index : -1;
+        }
+
+        ExpressionNode.Operator op = node.getOperator();
+        ExpressionNode left = node.getLeft();
+        ExpressionNode right = node.getRight();
+        long leftRank = rank(left);
+        long rightRank = rank(right);
+        if (leftRank < 0 || rightRank < 0) {
+            return -1;
+        }
+        if (isCommutative(op) && (left.getOperatorCount() > right.getOperatorCount()
+                || (left.getOperatorCount() == right.getOperatorCount() && leftRank > rightRank))) {
+            ExpressionNode swapped = left;
+            left = right;
+            right = swapped;
+            long temp = leftRank;
+            leftRank = rightRank;
+            rightRank = temp;
+        }
+
+        int k = node.getOperatorCount();
+        int i = left.getOperatorCount();
+        long rank = 0;
+        for (ExpressionNode.Operator before : OPERATORS) {
+            if (before == op) {
+                break;
+            }
+            for (int s = 0; s <= lastSplit(before, k); s++) {
+                rank += blockSize(before, k, s);
+            }
+        }
+        for (int s = 0; s < i; s++) {
+            rank += blockSize(op, k, s);
+        }
+        if (isCommutative(op) && i == k - 1 - i) {
+            return rank + triangularOffset(leftRank, counts[i]) + (rightRank - leftRank);
+        }
+        return rank + leftRank * counts[k - 1 - i] + rightRank;
+    }
+
+    private static boolean isCommutative(ExpressionNode.Operator op) {
+        return op == ExpressionNode.Operator.ADD || op == ExpressionNode.Operator.MULTIPLY;
+    }
+
+    // 可交换运算符只取左子树规模不大于右子树的拆分
+    private static int lastSplit(ExpressionNode.Operator op, int k) {
+        return isCommutative(op) ? (k - 1) / 2 : k - 1;
+    }
+
+    private long blockSize(ExpressionNode.Operator op, int k, int i) {
+        long left = counts[i];
+        long right = counts[k - 1 - i];
+        if (left == TOO_LARGE || right == TOO_LARGE) {
+            return TOO_LARGE;
+        }
+        if (isCommutative(op) && i == k - 1 - i) {
+            // 编号不减的无序对个数 n(n+1)/2
+            return left % 2 == 0 ? multiply(left / 2, left + 1) : multiply(left, (left + 1) / 2);
+        }
+        return multiply(left, right);
+    }
+
+    // 无序对 (a, b)，a <= b < n，按 a 升序排列时 a 行之前的对数
+    private static long triangularOffset(long a, long n) {
+        return a * n - a * (a - 1) / 2;
+    }
+
+    // 求 triangularOffset(a, n) <= rank 的最大 a，先用浮点估计再修正
+    private static long triangularRow(long rank, long n) {
+        double b = 2.0 * n + 1;
+        long a = (long) ((b - Math.sqrt(b * b - 8.0 * rank)) / 2);
+        a = Math.max(0, Math.min(a, n - 1));
+        while (a > 0 && triangularOffset(a, n) > rank) {
+            a--;
+        }
+        while (a + 1 < n && triangularOffset(a + 1, n) <= rank) {
+            a++;
+        }
+        return a;
+    }
+
+    private static long multiply(long a, long b) {
+        if (a == TOO_LARGE || b == TOO_LARGE || (a != 0 && b > MAX_SPACE / a)) {
+            return TOO_LARGE;
+        }
+        return a * b;
+    }
+
+    private static long add(long a, long b) {
+        if (a == TOO_LARGE || b == TOO_LARGE || a + b > MAX_SPACE) {
+            return TOO_LARGE;
+        }
+        return a + b;
+    }
+
+    // 与 ProblemGenerator.generateRandomFraction 的取值一致：1 到 range-1 的整数，分母 2 到 range-1 的真分数（约分后去重）
+    private static long[] buildLeaves(int range) {
+        // 真分数个数约为 0.3 * range^2，明显超出上限时不必枚举
+        if ((long) range * range > 8L * MAX_LEAVES) {
+            return new long[0];
+        }
+        long[] values = new long[1024];
+        int size = 0;
+        for (int n = 1; n < range; n++) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = pack(n, 1);
+        }
+        for (int d = 2; d < range; d++) {
+            for (int n = 1; n < d; n++) {
+                // 只保留既约分数，非既约分数与某个既约分数相等
+                if (Fraction.gcd(n, d) != 1) {
+                    continue;
+                }
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size * 2);
+                }
+                values[size++] = pack(n, d);
+            }
+            if (size > MAX_LEAVES) {
+                return new long[0];
+            }
+        }
+        values = Arrays.copyOf(values, size);
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static long pack(long numerator, long denominator) {
+        return numerator << 32 | denominator;
+    }
+
+    /**
+     * [0, size) 上的伪随机置换：4 轮 Feistel 网络作用在不小于 size 的 2 的偶数次幂区间上，
+     * 结果落在 size 之外时继续置换（循环步进），直到回到区间内；区间不超过 4 倍 size，平均不到 4 次
+     * 依次置换 0, 1, 2, ... 即得到互不相同的随机编号，不需要记录已抽取的编号
+     */
+    public static final class Permutation {
+        private static final int ROUNDS = 4;
+
+        private final long size;
+        private final int halfBits;
+        private final long halfMask;
+        private final long[] keys = new long[ROUNDS];
+
+        public Permutation(long size, SplittableRandom random) {
+            if (size <= 0) {
+                throw new IllegalArgumentException("置换区间必须非空");
+            }
+            this.size = size;
+            int bits = Math.max(2, 64 - Long.numberOfLeadingZeros(size - 1));
+            if ((bits & 1) != 0) {
+                bits++;
+            }
+            this.halfBits = bits / 2;
+            this.halfMask = (1L << halfBits) - 1;
+            for (int r = 0; r < ROUNDS; r++) {
+                keys[r] = random.nextLong();
+            }
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long apply(long index) {
+            long x = index;
+            do {
+                x = encrypt(x);
+            } while (x >= size);
+            return x;
+        }
+
+        private long encrypt(long x) {
+            long left = x >>> halfBits;
+            long right = x & halfMask;
+            for (long key : keys) {
+                long mixed = mix(right ^ key) & halfMask;
+                long next = left ^ mixed;
+                left = right;
+                right = next;
+            }
+            return left << halfBits | right;
+        }
+
+        private static long mix(long z) {
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            return z ^ (z >>> 31);
+        }
+    }
+}
@@ -2,9 +2,17 @@ package com.wyh;
 import java.util.Objects;
 
 public class Fraction implements Comparable<Fraction> {
+    // 无效值哨兵：除数为零或结果超出 int 范围时由 tryXxx 系列方法返回，不抛出异常
+    public static final Fraction INVALID = new Fraction();
+
     private final int numerator;
     private final int denominator;
 
+    private Fraction() {
+        this.numerator = 0;
+        this.denominator = 0;
+    }
+
     public Fraction(int numerator, int denominator) {
         if (denominator == 0) {
             throw new IllegalArgumentException("分母不能为零");
@@ -35,6 +43,70 @@ public class Fraction implements Comparable<Fraction> {
         return a;
     }
 
+    /**
+     * 不抛异常的构造方法：分母为零或约分后超出 int 范围时返回 {@link #INVALID}
+     */
+    public static Fraction of(long numerator, long denominator) {
+        if (denominator == 0) {
+            return INVALID;
+        }
+        if (denominator < 0) {
+            numerator = -numerator;
+            denominator = -denominator;
+        }
+        long gcd = gcd(Math.abs(numerator), denominator);
+        numerator /= gcd;
+        denominator /= gcd;
+        if (numerator < Integer.MIN_VALUE || numerator > Integer.MAX_VALUE || denominator > Integer.MAX_VALUE) {
+            return INVALID;
+        }
+        return new Fraction((int) numerator, (int) denominator);
+    }
+
+    static long gcd(long a, long b) {
+        while (b != 0) {
+            long temp = b;
+            b = a % b;
+            a = temp;
+        }
+        return a;
+    }
+
+    public boolean isValid() {
+        return denominator != 0;
+    }
+
+    // 不抛异常的四则运算，任一操作数无效、除数为零或溢出时返回 INVALID
+    public Fraction tryAdd(Fraction other) {
+        if (!isValid() || !other.isValid()) {
+            return INVALID;
+        }
+        return of((long) numerator * other.denominator + (long) other.numerator * denominator,
+                (long) denominator * other.denominator);
+    }
+
+    public Fraction trySubtract(Fraction other) {
+        if (!isValid() || !other.isValid()) {
+            return INVALID;
+        }
+        return of((long) numerator * other.denominator - (long) other.numerator * denominator,
+                (long) denominator * other.denominator);
+    }
+
+    public Fraction tryMultiply(Fraction other) {
+        if (!isValid() || !other.isValid()) {
+            return INVALID;
+        }
+        return of((long) numerator * other.numerator, (long) denominator * other.denominator);
+    }
+
+    public Fraction tryDivide(Fraction other) {
+        if (!isValid() || !other.isValid() || other.numerator == 0) {
+            return INVALID;
+        }
+        return of((long) numerator * other.denominator, (long) denominator * other.numerator);
+    }
+
     // 四则运算
     public Fraction add(Fraction other) {
         int newNum = this.numerator * other.denominator + other.numerator * this.denominator;
@@ -0,0 +1,224 @@
+package com.wyh;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按种子生成的请求合并（single-flight）
+ * 范围、运算符上限、数量和种子相同的请求结果完全一致：同时到达的相同请求只由第一个执行生成，
+ * 其余请求等待并共享同一份结果；完成的结果再保留一段时间（{@link #DEFAULT_TTL_MILLIS}），
+ * 随后到达的相同请求直接返回。全班同时打开同一份作业时，生成只执行一次。
+ *
+ * 结果缓存按条目数和题目总数双重限制，超出时淘汰最久未用的结果；生成失败的结果不缓存，
+ * 失败只传给正在等待的请求，下一次请求重新生成。
+ */
+public class GenerationCoalescer {
+    public static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    public static final int DEFAULT_MAX_RESULTS = 256;
+    public static final long DEFAULT_MAX_CACHED_PROBLEMS = 1_000_000L;
+
+    private final long ttlMillis;
+    private final int maxResults;
+    private final long maxCachedProblems;
+
+    // 正在生成的请求
+    private final Map<Key, CompletableFuture<List<Problem>>> inFlight = new ConcurrentHashMap<>();
+    // 已完成的结果，按访问顺序排列，最久未用的在前
+    private final LinkedHashMap<Key, Result> completed = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedProblems;
+
+    private final AtomicLong executed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private static final class Key {
+        final int range;
+        final int maxOperators;
+        final int count;
+        final long seed;
+
+        Key(int range, int maxOperators, int count, long seed) {
+            this.range = range;
+            this.maxOperators = maxOperators;
+            this.count = count;
+            this.seed = seed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return range == other.range && maxOperators == other.maxOperators
+                    && count == other.count && seed == other.seed;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(range, maxOperators, count, seed);
+        }
+    }
+
+    private static final class Result {
+        final List<Problem> problems;
+        final long expiresAt;
+
+        Result(List<Problem> problems, long expiresAt) {
+            this.problems = problems;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    public GenerationCoalescer() {
+        this(DEFAULT_TTL_MILLIS, DEFAULT_MAX_RESULTS, DEFAULT_MAX_CACHED_PROBLEMS);
+    }
+
+    public GenerationCoalescer(long ttlMillis, int maxResults, long maxCachedProblems) {
+        this.ttlMillis = ttlMillis;
+        this.maxResults = maxResults;
+        this.maxCachedProblems = maxCachedProblems;
+    }
+
+    /**
+     * 按种子生成题目；相同参数的并发请求共享一次生成。返回的列表不可修改，可能被多个调用方同时持有
+     */
+    public List<Problem> generate(int range, int maxOperators, int count, long seed) {
+        Key key = new Key(range, maxOperators, count, seed);
+        List<Problem> cached = lookup(key);
+        if (cached != null) {
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+
+        CompletableFuture<List<Problem>> own = new CompletableFuture<>();
+        CompletableFuture<List<Problem>> running = inFlight.putIfAbsent(key, own);
+        if (running != null) {
+            coalesced.incrementAndGet();
+            return await(running);
+        }
+
+        // 占位之前的结果可能刚好写入缓存（上一个生成者在查缓存与占位之间完成）
+        cached = lookup(key);
+        if (cached != null) {
+            inFlight.remove(key, own);
+            own.complete(cached);
+            cacheHits.incrementAndGet();
+            return cached;
+        }
+
+        executed.incrementAndGet();
+        try {
+            List<Problem> problems = Collections.unmodifiableList(
+                    ProblemGenerator.generateSeeded(range, maxOperators, count, seed));
+            // 先写缓存再移除占位，之后到达的请求总能在其中之一找到结果
+            store(key, problems);
+            own.complete(problems);
+            return problems;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, own);
+        }
+    }
+
+    /**
+     * 实际执行生成的次数
+     */
+    public long getExecutedCount() {
+        return executed.get();
+    }
+
+    /**
+     * 等待并共享进行中生成结果的请求数
+     */
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    /**
+     * 直接命中已完成结果的请求数
+     */
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    public synchronized int getCachedResultCount() {
+        return completed.size();
+    }
+
+    public synchronized void clear() {
+        completed.clear();
+        cachedProblems = 0;
+    }
+
+    private static List<Problem> await(CompletableFuture<List<Problem>> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new BusinessException(ErrorCode.GENERATION_FAILED.getCode(),
+                    "题目生成过程中发生错误: " + cause, cause);
+        }
+    }
+
+    private synchronized List<Problem> lookup(Key key) {
+        Result result = completed.get(key);
+        if (result == null) {
+            return null;
+        }
+        if (System.currentTimeMillis() - result.expiresAt >= 0) {
+            completed.remove(key);
+            cachedProblems -= result.problems.size();
+            return null;
+        }
+        return result.problems;
+    }
+
+    private synchronized void store(Key key, List<Problem> problems) {
+        // 单个结果超出题目总数上限时不缓存，只供同时到达的请求共享
+        if (problems.size() > maxCachedProblems || ttlMillis <= 0) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Result previous = completed.put(key, new Result(problems, now + ttlMillis));
+        if (previous != null) {
+            cachedProblems -= previous.problems.size();
+        }
+        cachedProblems += problems.size();
+
+        // 先清理过期结果，仍超限时按最久未用淘汰
+        Iterator<Result> it = completed.values().iterator();
+        while (it.hasNext()) {
+            Result result = it.next();
+            if (now - result.expiresAt >= 0) {
+                cachedProblems -= result.problems.size();
+                it.remove();
+            }
+        }
+        it = completed.values().iterator();
+        while (it.hasNext() && (completed.size() > maxResults || cachedProblems > maxCachedProblems)) {
+            cachedProblems -= it.next().problems.size();
+            it.remove();
+        }
+    }
+}
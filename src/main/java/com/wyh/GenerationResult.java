@@ -0,0 +1,105 @@
+package com.wyh;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import java.util.List;
+
+/**
+ * 限时生成的结果
+ * 包含已生成的题目以及耗时分布：请求数量、实际生成数量、尝试次数、被拒绝次数（无效或重复）和停止原因
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class GenerationResult {
+    /**
+     * 生成停止的原因
+     */
+    public enum StopReason {
+        COMPLETED("已生成全部题目"),
+        DEADLINE("已到达时间预算"),
+        CANCELLED("已被取消"),
+        EXHAUSTED("尝试次数已用完，题目空间不足");
+
+        private final String description;
+
+        StopReason(String description) {
+            this.description = description;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+    }
+
+    private final int requested;
+    private final int produced;
+    private final long attempts;
+    private final long elapsedMillis;
+    private final StopReason stopReason;
+    private List<Problem> problems;
+
+    public GenerationResult(int requested, int produced, long attempts, long elapsedMillis, StopReason stopReason) {
+        this.requested = requested;
+        this.produced = produced;
+        this.attempts = attempts;
+        this.elapsedMillis = elapsedMillis;
+        this.stopReason = stopReason;
+    }
+
+    public int getRequested() {
+        return requested;
+    }
+
+    public int getProduced() {
+        return produced;
+    }
+
+    public long getAttempts() {
+        return attempts;
+    }
+
+    /**
+     * 被拒绝的尝试次数：表达式无效、已在索引中或与本次已生成的题目重复
+     */
+    public long getRejections() {
+        return attempts - produced;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public StopReason getStopReason() {
+        return stopReason;
+    }
+
+    public boolean isTargetMet() {
+        return produced >= requested;
+    }
+
+    /**
+     * 已生成的题目；以 sink 方式生成时为 null
+     */
+    public List<Problem> getProblems() {
+        return problems;
+    }
+
+    void setProblems(List<Problem> problems) {
+        this.problems = problems;
+    }
+
+    /**
+     * 转换为统一响应体：未达到目标数量时仍为成功响应，由 targetMet 和 stopReason 说明情况
+     */
+    public ApiResponse<GenerationResult> toApiResponse() {
+        String message = isTargetMet()
+                ? String.format("已生成 %d 道题目", produced)
+                : String.format("%s，已生成 %d/%d 道题目", stopReason.getDescription(), produced, requested);
+        return ApiResponse.success(message, this);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GenerationResult{requested=%d, produced=%d, attempts=%d, rejections=%d, elapsedMillis=%d, stopReason=%s}",
+                requested, produced, attempts, getRejections(), elapsedMillis, stopReason);
+    }
+}
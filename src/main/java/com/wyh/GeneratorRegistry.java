@@ -0,0 +1,186 @@
+package com.wyh;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 线程安全的题目生成器注册表
+ * 按数值范围和运算符个数上限缓存 {@link ProblemGenerator}，参数相同的并发请求共享已验证表达式缓存，
+ * 每次调用使用线程本地的随机数和独立的去重状态。
+ * 其余约束条件（非负、真分数除法）全局固定，不进入键。
+ *
+ * 内存控制：表达式缓存条目之和、答案索引（含编号器）条目之和各有预算，任一超出时按最近使用时间淘汰最久未用的范围；
+ * 超过空闲时长未被使用的范围也会被淘汰。当前请求的生成器不会被淘汰，它的表达式缓存超出预算时只清空表达式缓存，
+ * 刚构建的答案索引保留，否则每次请求都会重新构建索引。
+ *
+ * 指定种子的生成经由 {@link GenerationCoalescer}：参数和种子都相同的并发请求只生成一次。
+ */
+public class GeneratorRegistry {
+    public static final long DEFAULT_MAX_CACHED_EXPRESSIONS = 2_000_000L;
+    // 数值范围 50 的答案索引约 330 万个值，预算容纳两个这样的范围
+    public static final long DEFAULT_MAX_INDEXED_VALUES = 8_000_000L;
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private static final GeneratorRegistry SHARED =
+            new GeneratorRegistry(DEFAULT_MAX_CACHED_EXPRESSIONS, DEFAULT_MAX_INDEXED_VALUES, DEFAULT_IDLE_MILLIS);
+
+    // 键由运算符个数上限（高 32 位）和数值范围（低 32 位）组成
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final long maxCachedExpressions;
+    private final long maxIndexedValues;
+    private final long idleMillis;
+    private final GenerationCoalescer coalescer;
+
+    private static class Entry {
+        final ProblemGenerator generator;
+        volatile long lastUsed;
+
+        Entry(ProblemGenerator generator) {
+            this.generator = generator;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    public GeneratorRegistry(long maxCachedExpressions, long idleMillis) {
+        this(maxCachedExpressions, DEFAULT_MAX_INDEXED_VALUES, idleMillis);
+    }
+
+    public GeneratorRegistry(long maxCachedExpressions, long maxIndexedValues, long idleMillis) {
+        this.maxCachedExpressions = maxCachedExpressions;
+        this.maxIndexedValues = maxIndexedValues;
+        this.idleMillis = idleMillis;
+        this.coalescer = new GenerationCoalescer();
+    }
+
+    /**
+     * 进程内共享的注册表，命令行与守护进程均使用它
+     */
+    public static GeneratorRegistry shared() {
+        return SHARED;
+    }
+
+    /**
+     * 获取指定范围、默认运算符个数上限的生成器，不存在时创建
+     */
+    public ProblemGenerator acquire(int range) {
+        return acquire(range, ProblemGenerator.DEFAULT_MAX_OPERATORS);
+    }
+
+    /**
+     * 获取指定范围和运算符个数上限的生成器，不存在时创建
+     */
+    public ProblemGenerator acquire(int range, int maxOperators) {
+        long key = keyOf(range, maxOperators);
+        Entry entry = entries.computeIfAbsent(key, k -> new Entry(
+                new ProblemGenerator(range, maxOperators, ProblemGenerator.DEFAULT_MAX_CACHE_ENTRIES)));
+        entry.lastUsed = System.currentTimeMillis();
+        evict(key);
+        return entry.generator;
+    }
+
+    /**
+     * 按种子生成题目，相同参数和种子的并发请求共享一次生成，结果在短时间内缓存
+     */
+    public List<Problem> generateSeeded(int range, int maxOperators, int count, long seed) {
+        return coalescer.generate(range, maxOperators, count, seed);
+    }
+
+    public GenerationCoalescer getCoalescer() {
+        return coalescer;
+    }
+
+    private static long keyOf(int range, int maxOperators) {
+        return (long) maxOperators << 32 | (range & 0xFFFFFFFFL);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * 所有生成器表达式缓存条目之和
+     */
+    public long getCachedExpressionCount() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.generator.getCacheSize();
+        }
+        return total;
+    }
+
+    /**
+     * 所有生成器答案索引和编号器条目之和
+     */
+    public long getIndexedValueCount() {
+        long total = 0;
+        for (Entry entry : entries.values()) {
+            total += entry.generator.getIndexSize();
+        }
+        return total;
+    }
+
+    public void clear() {
+        entries.clear();
+        coalescer.clear();
+        ExpressionNode.clearInternTable();
+    }
+
+    // 淘汰空闲的生成器，并在超出内存预算时按最近使用时间淘汰；当前请求的生成器不会被淘汰
+    private void evict(long activeKey) {
+        long now = System.currentTimeMillis();
+        entries.entrySet().removeIf(e -> {
+            if (e.getKey() != activeKey && now - e.getValue().lastUsed > idleMillis) {
+                recordEviction(e.getValue().generator, totalEntries(e.getValue().generator), "idle");
+                return true;
+            }
+            return false;
+        });
+
+        long total = getCachedExpressionCount();
+        long indexed = getIndexedValueCount();
+        if (total <= maxCachedExpressions && indexed <= maxIndexedValues) {
+            return;
+        }
+
+        List<Map.Entry<Long, Entry>> candidates = new ArrayList<>(entries.entrySet());
+        candidates.sort(Comparator.comparingLong(e -> e.getValue().lastUsed));
+        for (Map.Entry<Long, Entry> candidate : candidates) {
+            if (total <= maxCachedExpressions && indexed <= maxIndexedValues) {
+                break;
+            }
+            if (candidate.getKey() == activeKey) {
+                continue;
+            }
+            if (entries.remove(candidate.getKey(), candidate.getValue())) {
+                total -= candidate.getValue().generator.getCacheSize();
+                indexed -= candidate.getValue().generator.getIndexSize();
+                recordEviction(candidate.getValue().generator, totalEntries(candidate.getValue().generator), "memory");
+            }
+        }
+
+        // 只剩当前生成器的表达式缓存仍超出预算时，清空表达式缓存重新积累；答案索引保留
+        Entry active = entries.get(activeKey);
+        if (total > maxCachedExpressions && active != null) {
+            recordEviction(active.generator, active.generator.getCacheSize(), "clear");
+            active.generator.clearCache();
+        }
+    }
+
+    private static long totalEntries(ProblemGenerator generator) {
+        return (long) generator.getCacheSize() + generator.getIndexSize();
+    }
+
+    private static void recordEviction(ProblemGenerator generator, long entries, String reason) {
+        JfrEvents.CacheEvictionEvent event = new JfrEvents.CacheEvictionEvent();
+        if (event.shouldCommit()) {
+            event.range = generator.getRange();
+            event.entries = entries;
+            event.reason = reason;
+            event.commit();
+        }
+    }
+}
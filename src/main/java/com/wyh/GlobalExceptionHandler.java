@@ -1,6 +1,7 @@
 package com.wyh;
 
 import java.io.IOException;
+import java.io.PrintStream;
 import java.nio.file.NoSuchFileException;
 import java.util.stream.Collectors;
 
@@ -82,27 +83,49 @@ public class GlobalExceptionHandler {
 
     // 命令行特定的异常处理方法
     public static void handleCommandLineException(Exception e) {
+        handleCommandLineException(e, System.out, System.err);
+    }
+
+    // 指定输出流的版本，供守护进程把错误信息转发给客户端
+    public static void handleCommandLineException(Exception e, PrintStream out, PrintStream err) {
         ApiResponse<?> response = handleException(e);
 
-        System.err.println("错误: " + response.getMessage());
+        err.println("错误: " + response.getMessage());
         if (response.getErrorCode() != null) {
-            System.err.println("错误代码: " + response.getErrorCode());
+            err.println("错误代码: " + response.getErrorCode());
         }
 
         // 对于参数错误，显示使用说明
         if (ErrorCode.INVALID_PARAMETER.getCode().equals(response.getErrorCode()) ||
                 ErrorCode.MISSING_REQUIRED_PARAMETER.getCode().equals(response.getErrorCode())) {
-            System.err.println();
-            printUsage();
+            err.println();
+            printUsage(out);
         }
     }
 
-    private static void printUsage() {
-        System.out.println("用法:");
-        System.out.println("  生成题目: java MathProblemGenerator -r <范围> [-n <数量>]");
-        System.out.println("  判定对错: java MathProblemGenerator -e <题目文件> -a <答案文件>");
-        System.out.println("说明:");
-        System.out.println("  -r 必须在生成模式下提供，表示数值范围");
-        System.out.println("  生成的表达式满足：不产生负数；除法结果为真分数；运算符≤3个");
+    private static void printUsage(PrintStream out) {
+        out.println("用法:");
+        out.println("  生成题目: java MathProblemGenerator -r <范围> [-n <数量>] [-o <运算符上限>] [-q <配额> | -d <难度>] [-t <毫秒>] [-s <种子>] [-f <格式>] [--ranked] [--append] [--gzip] [--sidecar] [--fpp <误判率>] [--dedup-mem <MB>] [--integer-answers] [--max-answer <值>] [--answers <列表>]");
+        out.println("  判定对错: java MathProblemGenerator -e <题目文件> -a <答案文件> [--ranges]");
+        out.println("  批量生成: java MathProblemGenerator --batch <任务清单> [-j <并发数>]");
+        out.println("  守护进程: java MathProblemGenerator --daemon");
+        out.println("  通过守护进程执行: java MathProblemGenerator --client <以上任意参数>");
+        out.println("说明:");
+        out.println("  -r 必须在生成模式下提供，表示数值范围");
+        out.println("  -o 每道题目的最大运算符个数，默认 3，最大 255");
+        out.println("  -q 按运算符个数分层生成，如 -q 1:100,2:200,3:200 表示各层题目数量");
+        out.println("  -d 按难度配置 easy、medium、hard 分配 -n 道题目的运算符个数比例");
+        out.println("  -t 生成时间预算（毫秒），到期后输出已生成的部分题目并报告尝试与拒绝次数，不能与 -q / -d 同时使用");
+        out.println("  -s 随机种子：参数和种子相同时生成的题目完全一致；守护进程中同时到达的相同请求只生成一次，结果短时缓存");
+        out.println("  --ranked 按编号抽样生成：每个编号对应一道规范化题目，不需要去重集合，接近题目总数时也不会变慢");
+        out.println("  -f 输出格式：txt（默认，Exercises.txt 和 Answers.txt）、ndjson 或 bin（题目与答案合并为一条记录，输出 Exercises.ndjson / Exercises.bin）");
+        out.println("  --append 在已有题目文件后追加不重复的新题目（依赖题目文件旁的索引，如 Exercises.txt.idx）");
+        out.println("  --gzip 以分块并行压缩的 gzip 格式输出 Exercises.txt.gz 和 Answers.txt.gz，判分时可直接读取");
+        out.println("  --sidecar 同时输出判分校验文件 Exercises.txt.chk（每题的答案和题目行校验和），判分时未修改的题目不再解析表达式");
+        out.println("  --ranges 判分结果中连续题号合并为区间表示，如 Correct: 5000 (1-5000)");
+        out.println("  --fpp 去重布隆过滤器的误判率，默认 0.01；--dedup-mem 去重内存预算（MB），默认 64，超出后写入磁盘");
+        out.println("  --integer-answers 只生成答案为整数的题目；--max-answer 答案上限（含），如 10 或 1/2；--answers 答案取值列表，如 1,2,3'1/2");
+        out.println("  --batch 任务清单每行为 范围 数量 题目文件 答案文件 [运算符上限]，任务并发执行并输出汇总报告；-j 并发任务数，默认为 CPU 核数");
+        out.println("  生成的表达式满足：不产生负数；除法结果为真分数；运算符个数不超过 -o 指定的上限");
     }
 }
@@ -0,0 +1,129 @@
+package com.wyh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * 判分校验文件（生成题目时写在题目文件旁，文件名为题目文件名加 {@value #SUFFIX}）
+ * 生成器已经知道每道题的答案，判分时不必重新解析题目：校验文件按行号顺序为每道题保存一条定长记录，
+ * 判分时逐行取出对应记录，题目行的校验和一致就直接比较答案，不再解析表达式。
+ * 题目行被修改过（校验和不一致）或校验文件的记录比题目少时，该行回退为完整解析。
+ *
+ * 文件格式：魔数(int) 版本(int)，之后每行一条记录：答案分子(int) 答案分母(int) 题目行的 CRC32(int)。
+ * 校验和按题目行的 UTF-8 字节计算，不含行尾换行符；gzip 题目文件按解压后的内容计算。
+ */
+public class GradingSidecar implements Closeable {
+    public static final String SUFFIX = ".chk";
+
+    static final int MAGIC = 0x5759484B; // "WYHK"
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = Integer.BYTES * 2;
+    static final int RECORD_BYTES = Integer.BYTES * 3;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+    private final CRC32 crc = new CRC32();
+    private int numerator;
+    private int denominator;
+    private int checksum;
+
+    private GradingSidecar(FileChannel channel) {
+        this.channel = channel;
+        buffer.limit(0);
+    }
+
+    /**
+     * 题目文件对应的校验文件路径
+     */
+    public static Path of(Path exerciseFile) {
+        return exerciseFile.resolveSibling(exerciseFile.getFileName() + SUFFIX);
+    }
+
+    /**
+     * 打开题目文件对应的校验文件；不存在或格式不符时返回 null，调用方按完整解析判分
+     */
+    public static GradingSidecar open(Path exerciseFile) throws IOException {
+        Path path = of(exerciseFile);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // 读满文件头
+            }
+            header.flip();
+            if (size < HEADER_BYTES || (size - HEADER_BYTES) % RECORD_BYTES != 0
+                    || header.getInt() != MAGIC || header.getInt() != VERSION) {
+                channel.close();
+                return null;
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new GradingSidecar(channel);
+    }
+
+    /**
+     * 写入新校验文件的文件头，之后由 {@link OffHeapProblemStore#writeSidecarTo} 写入记录
+     */
+    public static void writeHeader(WritableByteChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(VERSION).flip();
+        while (header.hasRemaining()) {
+            out.write(header);
+        }
+    }
+
+    /**
+     * 读取下一条记录；记录已读完时返回 false
+     */
+    public boolean next() throws IOException {
+        if (buffer.remaining() < RECORD_BYTES) {
+            buffer.compact();
+            while (buffer.position() < RECORD_BYTES && channel.read(buffer) >= 0) {
+                // 读满至少一条记录或到达文件末尾
+            }
+            buffer.flip();
+            if (buffer.remaining() < RECORD_BYTES) {
+                return false;
+            }
+        }
+        numerator = buffer.getInt();
+        denominator = buffer.getInt();
+        checksum = buffer.getInt();
+        return true;
+    }
+
+    /**
+     * 当前记录是否对应这一题目行（题目行未被修改）
+     */
+    public boolean matches(String exerciseLine) {
+        crc.reset();
+        crc.update(exerciseLine.getBytes(StandardCharsets.UTF_8));
+        return (int) crc.getValue() == checksum && denominator > 0;
+    }
+
+    /**
+     * 当前记录的答案
+     */
+    public Fraction answer() {
+        return new Fraction(numerator, denominator);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
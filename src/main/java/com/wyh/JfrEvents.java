@@ -0,0 +1,98 @@
+package com.wyh;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Java Flight Recorder 自定义事件
+ * 默认阈值较高，持续录制时开销可忽略；如需调整，可在 .jfc 配置中覆盖对应事件的 threshold，
+ * 例如项目根目录的 wyh.jfc：java -XX:StartFlightRecording=settings=wyh.jfc ...
+ */
+public final class JfrEvents {
+    private static final String CATEGORY = "四则运算题目生成器";
+
+    private JfrEvents() {
+    }
+
+    @Name("com.wyh.GenerateProblems")
+    @Label("生成题目")
+    @Description("一次 generateProblems 调用")
+    @Category(CATEGORY)
+    @Threshold("20 ms")
+    @StackTrace(false)
+    public static class GenerationEvent extends Event {
+        @Label("请求数量")
+        public int count;
+
+        @Label("实际生成数量")
+        public int produced;
+
+        @Label("数值范围")
+        public int range;
+
+        @Label("尝试次数")
+        public long attempts;
+
+        @Label("拒绝次数")
+        @Description("无效、重复或被索引排除的候选表达式数量")
+        public long rejections;
+    }
+
+    @Name("com.wyh.FileWrite")
+    @Label("写入文件")
+    @Category(CATEGORY)
+    @Threshold("20 ms")
+    @StackTrace(false)
+    public static class FileWriteEvent extends Event {
+        @Label("文件路径")
+        public String path;
+
+        @Label("行数")
+        public long lines;
+
+        @Label("写入字节数")
+        @DataAmount
+        public long bytes;
+
+        @Label("gzip 压缩")
+        public boolean gzip;
+    }
+
+    @Name("com.wyh.GradingChunk")
+    @Label("判分分块")
+    @Description("AnswerChecker.grade 处理的一段连续题目")
+    @Category(CATEGORY)
+    @Threshold("10 ms")
+    @StackTrace(false)
+    public static class GradingChunkEvent extends Event {
+        @Label("起始题号")
+        public int firstLine;
+
+        @Label("题目数")
+        public int lines;
+
+        @Label("正确数")
+        public int correct;
+    }
+
+    @Name("com.wyh.CacheEviction")
+    @Label("缓存淘汰")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static class CacheEvictionEvent extends Event {
+        @Label("数值范围")
+        public int range;
+
+        @Label("淘汰条目数")
+        public long entries;
+
+        @Label("原因")
+        public String reason;
+    }
+}
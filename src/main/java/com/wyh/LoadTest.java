@@ -0,0 +1,349 @@
+package com.wyh;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 端到端压测工具
+ * 以固定速率（开环）并发驱动题目生成和判分，记录延迟分布（p50/p99/p999）与吞吐量，
+ * 结果写入 JSON 报告，便于不同版本之间对比。
+ *
+ * 延迟从计划发起时间开始计算，请求排队等待的时间也计入，避免协同遗漏（coordinated omission）。
+ *
+ * 用法: java com.wyh.LoadTest [--target inproc|daemon] [--rate 每秒请求数] [--concurrency 并发数]
+ *                             [--duration 秒] [--range 范围] [--count 每次生成题数]
+ *                             [--corpus 判分语料题数] [--wrong-ratio 错误答案比例]
+ *                             [--grade-ratio 判分请求比例] [--seeds 种子个数] [--report 报告路径]
+ *
+ * --seeds 大于 0 时生成请求从这些种子中随机选一个（-s），模拟全班同时打开同一份作业的相同请求。
+ */
+public class LoadTest {
+    private String target = "inproc";
+    private int rate = 200;
+    private int concurrency = Runtime.getRuntime().availableProcessors();
+    private int durationSeconds = 30;
+    private int range = 10;
+    private int count = 100;
+    private int corpusSize = 10_000;
+    private double wrongRatio = 0.1;
+    private double gradeRatio = 0.2;
+    private int seeds;
+    private String reportFile = "loadtest-report.json";
+
+    private final LatencyHistogram generateLatency = new LatencyHistogram();
+    private final LatencyHistogram gradeLatency = new LatencyHistogram();
+    private final AtomicLong generateErrors = new AtomicLong();
+    private final AtomicLong gradeErrors = new AtomicLong();
+    private final AtomicLong gradedWrong = new AtomicLong();
+    private final AtomicLong gradedTotal = new AtomicLong();
+
+    private Path workDir;
+    private Path exerciseFile;
+    private Path answerFile;
+    // 守护进程模式下每个工作线程的输出目录
+    private final ThreadLocal<Path> workerDir = new ThreadLocal<>();
+
+    public static void main(String[] args) {
+        try {
+            LoadTest test = parse(args);
+            test.run();
+        } catch (Exception e) {
+            GlobalExceptionHandler.handleCommandLineException(e);
+            System.exit(1);
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        workDir = Files.createTempDirectory("wyh-loadtest");
+        try {
+            drive();
+        } finally {
+            deleteWorkDir();
+        }
+    }
+
+    private void drive() throws IOException, InterruptedException {
+        System.out.printf("=== 压测开始: 目标=%s, 速率=%d/s, 并发=%d, 时长=%ds ===\n",
+                target, rate, concurrency, durationSeconds);
+
+        synthesizeCorpus();
+        System.out.printf("已生成判分语料 %d 道（错误答案比例 %.2f）: %s\n", corpusSize, wrongRatio, workDir);
+
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long issued = 0;
+
+        // 开环调度：按计划时间发起请求，不因前一个请求变慢而推迟
+        for (long scheduled = start; scheduled < end; scheduled += intervalNanos) {
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            final long intendedStart = scheduled;
+            issued++;
+            if (ThreadLocalRandom.current().nextDouble() < gradeRatio) {
+                workers.execute(() -> timedGrade(intendedStart));
+            } else {
+                workers.execute(() -> timedGenerate(intendedStart));
+            }
+        }
+
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.HOURS);
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        printSummary(issued, elapsedSeconds);
+        writeReport(issued, elapsedSeconds);
+        System.out.println("压测报告已写入 " + reportFile);
+    }
+
+    private void synthesizeCorpus() throws IOException {
+        exerciseFile = workDir.resolve("corpus-exercises.txt");
+        answerFile = workDir.resolve("corpus-answers.txt");
+        List<Problem> problems = new ProblemGenerator(Math.max(range, 20)).generateProblems(corpusSize);
+
+        Random random = new Random(corpusSize);
+        try (BufferedWriter exercises = Files.newBufferedWriter(exerciseFile);
+             BufferedWriter answers = Files.newBufferedWriter(answerFile)) {
+            for (Problem problem : problems) {
+                exercises.write(problem.toString());
+                exercises.newLine();
+                // 按比例写入错误答案：在正确答案上加一
+                if (random.nextDouble() < wrongRatio) {
+                    answers.write(ExpressionParser.evaluate(problem.getAnswer()).tryAdd(Fraction.of(1, 1)).toString());
+                } else {
+                    answers.write(problem.getAnswer());
+                }
+                answers.newLine();
+            }
+        }
+    }
+
+    private void timedGenerate(long intendedStart) {
+        try {
+            long seed = seeds > 0 ? ThreadLocalRandom.current().nextInt(seeds) : -1;
+            if ("daemon".equals(target)) {
+                int exitCode = seed >= 0
+                        ? invokeDaemon("-r", String.valueOf(range), "-n", String.valueOf(count),
+                                "-s", String.valueOf(seed))
+                        : invokeDaemon("-r", String.valueOf(range), "-n", String.valueOf(count));
+                if (exitCode != 0) {
+                    generateErrors.incrementAndGet();
+                }
+            } else if (seed >= 0) {
+                GeneratorRegistry.shared().generateSeeded(range, ProblemGenerator.DEFAULT_MAX_OPERATORS, count, seed);
+            } else {
+                GeneratorRegistry.shared().acquire(range).generateProblems(count);
+            }
+        } catch (Exception e) {
+            generateErrors.incrementAndGet();
+        }
+        generateLatency.record(System.nanoTime() - intendedStart);
+    }
+
+    private void timedGrade(long intendedStart) {
+        try {
+            if ("daemon".equals(target)) {
+                int exitCode = invokeDaemon("-e", exerciseFile.toString(), "-a", answerFile.toString());
+                if (exitCode != 0) {
+                    gradeErrors.incrementAndGet();
+                }
+            } else {
+                AnswerChecker.GradingResult result =
+                        AnswerChecker.grade(exerciseFile.toString(), answerFile.toString());
+                gradedWrong.addAndGet(result.getWrongCount());
+                gradedTotal.addAndGet(result.getTotal());
+            }
+        } catch (Exception e) {
+            gradeErrors.incrementAndGet();
+        }
+        gradeLatency.record(System.nanoTime() - intendedStart);
+    }
+
+    // 每个工作线程使用独立目录：开环调度下同一槽位的前后两个请求可能同时在不同线程上执行，
+    // 按线程划分才能保证同一目录中的输出文件（题目、索引、成绩）不会被并发写入
+    private int invokeDaemon(String... args) throws IOException {
+        Path dir = workerDir.get();
+        if (dir == null) {
+            dir = Files.createDirectories(workDir.resolve("worker-" + Thread.currentThread().getId()));
+            workerDir.set(dir);
+        }
+        return CommandDaemon.invoke(args, dir, OutputStream.nullOutputStream(), OutputStream.nullOutputStream());
+    }
+
+    // 删除判分语料和各工作线程的输出目录
+    private void deleteWorkDir() throws IOException {
+        try (Stream<Path> paths = Files.walk(workDir)) {
+            List<Path> all = paths.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+            for (Path path : all) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    private void printSummary(long issued, double elapsedSeconds) {
+        System.out.println("\n" + "=".repeat(50));
+        System.out.println("压测统计报告");
+        System.out.println("=".repeat(50));
+        System.out.printf("发起请求: %d，耗时 %.1fs，吞吐量 %.1f/s\n", issued, elapsedSeconds, issued / elapsedSeconds);
+        printHistogram("生成", generateLatency, generateErrors.get());
+        printHistogram("判分", gradeLatency, gradeErrors.get());
+        if (seeds > 0 && "inproc".equals(target)) {
+            GenerationCoalescer coalescer = GeneratorRegistry.shared().getCoalescer();
+            System.out.printf("按种子生成: 实际执行 %d 次，合并 %d 次，缓存命中 %d 次\n",
+                    coalescer.getExecutedCount(), coalescer.getCoalescedCount(), coalescer.getCacheHitCount());
+        }
+        if (gradedTotal.get() > 0) {
+            System.out.printf("判分结果错误比例: %.4f（设定 %.4f）\n",
+                    gradedWrong.get() / (double) gradedTotal.get(), wrongRatio);
+        }
+        System.out.println("=".repeat(50));
+    }
+
+    private static void printHistogram(String name, LatencyHistogram histogram, long errors) {
+        System.out.printf("%s: 次数=%d 错误=%d p50=%.2fms p99=%.2fms p999=%.2fms 最大=%.2fms\n",
+                name, histogram.getCount(), errors,
+                histogram.getValueAtPercentile(50) / 1e6,
+                histogram.getValueAtPercentile(99) / 1e6,
+                histogram.getValueAtPercentile(99.9) / 1e6,
+                histogram.getMax() / 1e6);
+    }
+
+    private void writeReport(long issued, double elapsedSeconds) throws IOException {
+        StringBuilder json = new StringBuilder();
+        json.append("{\n");
+        json.append("  \"timestamp\": ").append(System.currentTimeMillis()).append(",\n");
+        json.append("  \"target\": \"").append(target).append("\",\n");
+        json.append("  \"rate\": ").append(rate).append(",\n");
+        json.append("  \"concurrency\": ").append(concurrency).append(",\n");
+        json.append("  \"durationSeconds\": ").append(durationSeconds).append(",\n");
+        json.append("  \"range\": ").append(range).append(",\n");
+        json.append("  \"count\": ").append(count).append(",\n");
+        json.append("  \"corpusSize\": ").append(corpusSize).append(",\n");
+        json.append("  \"wrongRatio\": ").append(wrongRatio).append(",\n");
+        json.append("  \"seeds\": ").append(seeds).append(",\n");
+        json.append("  \"requests\": ").append(issued).append(",\n");
+        json.append("  \"elapsedSeconds\": ").append(format(elapsedSeconds)).append(",\n");
+        json.append("  \"throughputPerSecond\": ").append(format(issued / elapsedSeconds)).append(",\n");
+        if (gradedTotal.get() > 0) {
+            json.append("  \"observedWrongRatio\": ")
+                    .append(format(gradedWrong.get() / (double) gradedTotal.get())).append(",\n");
+        }
+        json.append("  \"operations\": {\n");
+        appendOperation(json, "generate", generateLatency, generateErrors.get(), elapsedSeconds);
+        json.append(",\n");
+        appendOperation(json, "grade", gradeLatency, gradeErrors.get(), elapsedSeconds);
+        json.append("\n  }\n}\n");
+
+        Files.write(Paths.get(reportFile), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void appendOperation(StringBuilder json, String name, LatencyHistogram histogram,
+                                        long errors, double elapsedSeconds) {
+        json.append("    \"").append(name).append("\": {\n");
+        json.append("      \"count\": ").append(histogram.getCount()).append(",\n");
+        json.append("      \"errors\": ").append(errors).append(",\n");
+        json.append("      \"throughputPerSecond\": ")
+                .append(format(histogram.getCount() / elapsedSeconds)).append(",\n");
+        json.append("      \"latencyMicros\": {");
+        json.append("\"min\": ").append(histogram.getMin() / 1000).append(", ");
+        json.append("\"mean\": ").append(format(histogram.getMean() / 1000)).append(", ");
+        json.append("\"p50\": ").append(histogram.getValueAtPercentile(50) / 1000).append(", ");
+        json.append("\"p90\": ").append(histogram.getValueAtPercentile(90) / 1000).append(", ");
+        json.append("\"p99\": ").append(histogram.getValueAtPercentile(99) / 1000).append(", ");
+        json.append("\"p999\": ").append(histogram.getValueAtPercentile(99.9) / 1000).append(", ");
+        json.append("\"max\": ").append(histogram.getMax() / 1000).append("}\n");
+        json.append("    }");
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.3f", value);
+    }
+
+    private static LoadTest parse(String[] args) {
+        LoadTest test = new LoadTest();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (i + 1 >= args.length) {
+                    throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                            args[i] + " 参数后必须跟参数值");
+                }
+                String value = args[++i];
+                switch (args[i - 1]) {
+                    case "--target":
+                        if (!"inproc".equals(value) && !"daemon".equals(value)) {
+                            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                                    "--target 只能为 inproc 或 daemon");
+                        }
+                        test.target = value;
+                        break;
+                    case "--rate":
+                        test.rate = Integer.parseInt(value);
+                        break;
+                    case "--concurrency":
+                        test.concurrency = Integer.parseInt(value);
+                        break;
+                    case "--duration":
+                        test.durationSeconds = Integer.parseInt(value);
+                        break;
+                    case "--range":
+                        test.range = Integer.parseInt(value);
+                        break;
+                    case "--count":
+                        test.count = Integer.parseInt(value);
+                        break;
+                    case "--corpus":
+                        test.corpusSize = Integer.parseInt(value);
+                        break;
+                    case "--wrong-ratio":
+                        test.wrongRatio = Double.parseDouble(value);
+                        break;
+                    case "--grade-ratio":
+                        test.gradeRatio = Double.parseDouble(value);
+                        break;
+                    case "--seeds":
+                        test.seeds = Integer.parseInt(value);
+                        break;
+                    case "--report":
+                        test.reportFile = value;
+                        break;
+                    default:
+                        throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                                "未知参数: " + args[i - 1]);
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "参数格式错误: " + e.getMessage());
+        }
+
+        if (test.rate <= 0 || test.concurrency <= 0 || test.durationSeconds <= 0 || test.corpusSize <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "速率、并发数、时长和语料规模必须为正整数");
+        }
+        if (test.seeds < 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "种子个数 --seeds 不能为负数");
+        }
+        return test;
+    }
+}
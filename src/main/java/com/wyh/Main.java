@@ -1,23 +1,60 @@
 package com.wyh;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
 
 public class Main {
+    private static final String EXERCISE_FILE = "Exercises.txt";
+    private static final String ANSWER_FILE = "Answers.txt";
+    private static final String GZIP_SUFFIX = ".gz";
+    // 题目规范化键索引，与题目文件一同生成，供追加模式去重；文件名为题目文件名加该后缀，每种输出格式各有一份
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String GRADE_FILE = "Grade.txt";
+
+    // 相对路径的解析基准目录；守护进程模式下为客户端的工作目录
+    private final Path workDir;
+    private final PrintStream out;
+    // 按范围复用的题目生成器；守护进程模式下在多次调用之间常驻
+    private final GeneratorRegistry generators;
+
+    public Main(Path workDir, PrintStream out, GeneratorRegistry generators) {
+        this.workDir = workDir;
+        this.out = out;
+        this.generators = generators;
+    }
 
     public static void main(String[] args) {
+        if (args.length > 0 && CommandDaemon.DAEMON_FLAG.equals(args[0])) {
+            CommandDaemon.serve();
+            return;
+        }
+        if (args.length > 0 && CommandDaemon.CLIENT_FLAG.equals(args[0])) {
+            System.exit(CommandDaemon.forward(Arrays.copyOfRange(args, 1, args.length)));
+        }
+
         try {
-            execute(args);
+            new Main(Paths.get("").toAbsolutePath(), System.out, GeneratorRegistry.shared()).execute(args);
         } catch (Exception e) {
             GlobalExceptionHandler.handleCommandLineException(e);
             System.exit(1);
         }
     }
 
-    private static void execute(String[] args) {
+    public void execute(String[] args) {
         if (args.length == 0) {
             throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
                     "缺少必要参数，请使用 -r 参数指定数值范围或使用 -e 和 -a 参数进行判分");
@@ -25,24 +62,66 @@ public class Main {
 
         CommandLineArgs cli = parseCommandLine(args);
 
-        if (cli.isGradingMode()) {
+        if (cli.isBatchMode()) {
+            runBatch(cli);
+        } else if (cli.isGradingMode()) {
             performGrading(cli);
         } else {
             generateProblems(cli);
         }
     }
 
-    private static void performGrading(CommandLineArgs cli) {
+    private void runBatch(CommandLineArgs cli) {
+        Path manifest = resolve(cli.getBatchManifest());
+        if (!Files.exists(manifest)) {
+            throw new BusinessException(ErrorCode.FILE_NOT_FOUND.getCode(),
+                    "任务清单不存在: " + cli.getBatchManifest());
+        }
+
+        BatchReport report;
+        try {
+            report = new BatchRunner(generators, workDir, cli.getBatchParallelism())
+                    .run(BatchRunner.readManifest(manifest));
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.FILE_READ_ERROR.getCode(),
+                    "读取任务清单失败: " + e.getMessage(), e);
+        }
+
+        for (BatchReport.JobStatus job : report.getJobs()) {
+            if (job.isSuccess()) {
+                out.printf("第 %d 行: 已生成 %d 道题目到 %s，答案写入 %s（%d ms）\n", job.getLine(),
+                        job.getProduced(), job.getExerciseFile(), job.getAnswerFile(), job.getElapsedMillis());
+            } else {
+                out.printf("第 %d 行: 失败 [%s] %s\n", job.getLine(), job.getErrorCode(), job.getMessage());
+            }
+        }
+        ApiResponse<BatchReport> response = report.toApiResponse();
+        out.printf("%s，并发 %d，总耗时 %d ms（逐个运行约 %d ms）\n", response.getMessage(),
+                report.getParallelism(), report.getElapsedMillis(), report.getSerialMillis());
+        if (!response.isSuccess()) {
+            throw new BusinessException(response.getErrorCode(), response.getMessage());
+        }
+    }
+
+    private void performGrading(CommandLineArgs cli) {
         validateGradingParameters(cli);
 
         try {
-            AnswerChecker.GradingResult result =
-                    AnswerChecker.grade(cli.getExerciseFile(), cli.getAnswerFile());
-            Files.write(Paths.get("Grade.txt"), result.toGradeString().getBytes());
-            System.out.println("判分完成，结果已写入 Grade.txt");
+            AnswerChecker.GradingResult result = AnswerChecker.grade(
+                    resolve(cli.getExerciseFile()).toString(), resolve(cli.getAnswerFile()).toString());
+            try (BufferedWriter writer = Files.newBufferedWriter(resolve(GRADE_FILE))) {
+                result.writeTo(writer, cli.isCompressRanges());
+            }
+            out.println("判分完成，结果已写入 Grade.txt");
+            if (result.getCheckedBySidecar() > 0) {
+                out.printf("其中 %d 道题目由判分校验文件直接核对\n", result.getCheckedBySidecar());
+            }
 
             // 输出统计信息
-            System.out.println(result.toGradeString());
+            BufferedWriter console = new BufferedWriter(new OutputStreamWriter(out), 64 * 1024);
+            result.writeTo(console, cli.isCompressRanges());
+            console.newLine();
+            console.flush();
 
         } catch (IOException e) {
             throw new BusinessException(ErrorCode.GRADING_FAILED.getCode(),
@@ -50,18 +129,54 @@ public class Main {
         }
     }
 
-    private static void generateProblems(CommandLineArgs cli) {
+    private void generateProblems(CommandLineArgs cli) {
         validateGenerationParameters(cli);
 
         try {
-            ProblemGenerator generator = new ProblemGenerator(cli.getRange());
-            List<Problem> problems = generator.generateProblems(cli.getCount());
+            CanonicalKeyIndex index = loadKeyIndex(cli);
 
-            writeProblemsToFile(problems);
-            writeAnswersToFile(problems);
+            ProblemGenerator generator = generators.acquire(cli.getRange(), cli.getMaxOperators());
+            String exerciseFile = outputFileName(EXERCISE_FILE, cli);
+            String answerFile = outputFileName(ANSWER_FILE, cli);
 
-            System.out.printf("已成功生成 %d 道题目到 Exercises.txt，答案写入 Answers.txt\n", problems.size());
-            System.out.println("所有题目均满足：不产生负数、除法结果为真分数、运算符不超过3个且无重复题目");
+            // 题目直接存入堆外存储，写文件前不在堆上保留大量 Problem 对象
+            try (OffHeapProblemStore problems = new OffHeapProblemStore()) {
+                Consumer<Problem> sink = problem -> {
+                    problems.add(problem);
+                    index.add(problem.getCanonicalHash());
+                };
+                GenerationResult result = null;
+                if (cli.isStratified()) {
+                    generator.generateProblems(cli.resolveQuotas(), index).forEach(sink);
+                } else if (cli.hasAnswerFilter()) {
+                    generator.generateProblems(cli.getCount(), cli.resolveAnswerFilter(), cli.getAnswers(), index,
+                            sink);
+                } else if (cli.isRanked()) {
+                    generator.generateDistinct(cli.getCount(), index, sink, ThreadLocalRandom.current().nextLong());
+                } else if (cli.hasSeed()) {
+                    // 指定种子的相同请求结果一致，并发到达时只生成一次
+                    generators.generateSeeded(cli.getRange(), cli.getMaxOperators(), cli.getCount(), cli.getSeed())
+                            .forEach(sink);
+                } else {
+                    result = generateDeduplicated(generator, cli, index, sink);
+                }
+
+                if (cli.getFormat() == ExportFormat.TXT) {
+                    boolean appendingToExisting = cli.isAppend() && Files.exists(resolve(exerciseFile));
+                    writeProblemsToFile(problems, exerciseFile, cli);
+                    writeAnswersToFile(problems, answerFile, cli);
+                    writeSidecar(problems, exerciseFile, cli, appendingToExisting);
+                } else {
+                    // NDJSON / 二进制格式的题目和答案在同一条记录里，只输出一个文件
+                    exportProblems(problems, exerciseFile, cli);
+                    answerFile = null;
+                }
+                index.save(resolve(indexFileName(cli)));
+                printGenerationSummary(cli, problems.size(), index.size(), exerciseFile, answerFile);
+                if (result != null) {
+                    printTimedSummary(result);
+                }
+            }
 
         } catch (BusinessException e) {
             throw e; // 重新抛出业务异常
@@ -71,24 +186,62 @@ public class Main {
         }
     }
 
-    private static void validateGradingParameters(CommandLineArgs cli) {
+    // 只有逐个随机生成的路径需要两级去重过滤器，其余路径自带去重，不为它们分配布隆过滤器和哈希表
+    private GenerationResult generateDeduplicated(ProblemGenerator generator, CommandLineArgs cli,
+                                                  CanonicalKeyIndex index, Consumer<Problem> sink) throws IOException {
+        try (DuplicateFilter seen = new DuplicateFilter(cli.getCount(), cli.getFalsePositiveRate(),
+                cli.getDedupMemoryMb() * 1024L * 1024L, workDir)) {
+            if (cli.getTimeBudgetMillis() > 0) {
+                return generator.generateWithin(cli.getCount(), index, seen, sink,
+                        cli.getTimeBudgetMillis(), null);
+            }
+            generator.generateProblems(cli.getCount(), index, seen, sink);
+            return null;
+        }
+    }
+
+    private void printTimedSummary(GenerationResult result) {
+        if (!result.isTargetMet()) {
+            out.printf("警告: %s，只生成了 %d/%d 道题目\n", result.getStopReason().getDescription(),
+                    result.getProduced(), result.getRequested());
+        }
+        out.printf("耗时 %d ms，尝试 %d 次，拒绝 %d 次（无效或重复）\n",
+                result.getElapsedMillis(), result.getAttempts(), result.getRejections());
+    }
+
+    private void printGenerationSummary(CommandLineArgs cli, int generated, int total,
+                                        String exerciseFile, String answerFile) {
+
+        if (answerFile == null) {
+            out.printf("已成功生成 %d 道题目（含答案）到 %s（累计 %d 道）\n", generated, exerciseFile, total);
+        } else if (cli.isAppend()) {
+            out.printf("已追加 %d 道不重复题目到 %s，答案写入 %s（累计 %d 道）\n",
+                    generated, exerciseFile, answerFile, total);
+        } else {
+            out.printf("已成功生成 %d 道题目到 %s，答案写入 %s\n",
+                    generated, exerciseFile, answerFile);
+        }
+        out.printf("所有题目均满足：不产生负数、除法结果为真分数、运算符不超过%d个且无重复题目\n", cli.getMaxOperators());
+    }
+
+    private void validateGradingParameters(CommandLineArgs cli) {
         if (cli.getExerciseFile() == null || cli.getAnswerFile() == null) {
             throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
                     "判分模式必须同时提供 -e 和 -a 参数");
         }
 
-        if (!Files.exists(Paths.get(cli.getExerciseFile()))) {
+        if (!Files.exists(resolve(cli.getExerciseFile()))) {
             throw new BusinessException(ErrorCode.FILE_NOT_FOUND.getCode(),
                     "题目文件不存在: " + cli.getExerciseFile());
         }
 
-        if (!Files.exists(Paths.get(cli.getAnswerFile()))) {
+        if (!Files.exists(resolve(cli.getAnswerFile()))) {
             throw new BusinessException(ErrorCode.FILE_NOT_FOUND.getCode(),
                     "答案文件不存在: " + cli.getAnswerFile());
         }
     }
 
-    private static void validateGenerationParameters(CommandLineArgs cli) {
+    private void validateGenerationParameters(CommandLineArgs cli) {
         if (cli.getRange() <= 0) {
             throw new BusinessException(ErrorCode.INVALID_RANGE_PARAMETER.getCode(),
                     "范围参数 -r 必须为正整数，当前值: " + cli.getRange());
@@ -99,23 +252,200 @@ public class Main {
                     "题目数量 -n 必须为正整数，当前值: " + cli.getCount());
         }
 
+        if (cli.getMaxOperators() < 1 || cli.getMaxOperators() > ProblemGenerator.MAX_OPERATOR_LIMIT) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "运算符个数上限 -o 必须在 1 到 " + ProblemGenerator.MAX_OPERATOR_LIMIT + " 之间，当前值: "
+                            + cli.getMaxOperators());
+        }
+
+        if (cli.getQuotas() != null && cli.getQuotas().length > cli.getMaxOperators() + 1) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "分层配额的运算符个数不能超过 -o 指定的上限 " + cli.getMaxOperators());
+        }
+
+        if (cli.hasAnswerFilter() && cli.getMaxOperators() > AnswerIndex.MAX_INDEXED_OPERATORS) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "答案条件只支持运算符个数不超过 " + AnswerIndex.MAX_INDEXED_OPERATORS + " 的题目，请去掉 -o 或减小其值");
+        }
+
+        if (cli.getTimeBudgetMillis() < 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "时间预算 -t 必须为正整数（毫秒），当前值: " + cli.getTimeBudgetMillis());
+        }
+
+        if (cli.getTimeBudgetMillis() > 0 && cli.isStratified()) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "时间预算 -t 不能与分层生成 -q / -d 同时使用");
+        }
+
+        if (cli.hasAnswerFilter() && (cli.isStratified() || cli.getTimeBudgetMillis() > 0)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "答案条件不能与分层生成 -q / -d 或时间预算 -t 同时使用");
+        }
+
+        if (cli.isRanked() && (cli.isStratified() || cli.getTimeBudgetMillis() > 0 || cli.hasAnswerFilter())) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "按编号抽样 --ranked 不能与分层生成 -q / -d、时间预算 -t 或答案条件同时使用");
+        }
+
+        if (cli.isSidecar() && cli.getFormat() != ExportFormat.TXT) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "判分校验文件 --sidecar 只用于 txt 格式，ndjson / bin 格式的记录中已包含答案");
+        }
+
+        if (cli.hasSeed() && (cli.isStratified() || cli.getTimeBudgetMillis() > 0 || cli.hasAnswerFilter()
+                || cli.isRanked() || cli.isAppend())) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "随机种子 -s 不能与分层生成 -q / -d、时间预算 -t、答案条件、--ranked 或 --append 同时使用");
+        }
+
+        if (!(cli.getFalsePositiveRate() > 0 && cli.getFalsePositiveRate() < 1)) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "去重误判率 --fpp 必须在 0 到 1 之间，当前值: " + cli.getFalsePositiveRate());
+        }
+
+        if (cli.getDedupMemoryMb() <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "去重内存预算 --dedup-mem 必须为正整数（MB），当前值: " + cli.getDedupMemoryMb());
+        }
+
         if (cli.getRange() < 3) {
-            System.out.println("警告: 范围参数较小，可能影响题目生成多样性");
+            out.println("警告: 范围参数较小，可能影响题目生成多样性");
+        }
+    }
+
+    private CanonicalKeyIndex loadKeyIndex(CommandLineArgs cli) throws IOException {
+        String indexFile = indexFileName(cli);
+        if (!cli.isAppend()) {
+            // 普通模式覆盖题目文件，索引也随之重建
+            Files.deleteIfExists(resolve(indexFile));
+            return new CanonicalKeyIndex();
+        }
+
+        if (!Files.exists(resolve(indexFile)) && Files.exists(resolve(outputFileName(EXERCISE_FILE, cli)))) {
+            throw new BusinessException(ErrorCode.FILE_NOT_FOUND.getCode(),
+                    "追加模式需要索引文件 " + indexFile + "，请先以普通模式重新生成题目");
+        }
+        return CanonicalKeyIndex.load(resolve(indexFile));
+    }
+
+    // 索引跟随它所描述的题目文件（格式、压缩后缀都计入文件名），与 GradingSidecar.of 的命名方式一致
+    private String indexFileName(CommandLineArgs cli) {
+        return outputFileName(EXERCISE_FILE, cli) + INDEX_SUFFIX;
+    }
+
+    private String outputFileName(String baseName, CommandLineArgs cli) {
+        String fileName = baseName;
+        if (cli.getFormat() != ExportFormat.TXT) {
+            fileName = baseName.substring(0, baseName.lastIndexOf('.') + 1) + cli.getFormat().getExtension();
+        }
+        return cli.isGzip() ? fileName + GZIP_SUFFIX : fileName;
+    }
+
+    private void writeProblemsToFile(OffHeapProblemStore problems, String fileName, CommandLineArgs cli)
+            throws IOException {
+        writeLines(problems, true, fileName, cli);
+    }
+
+    private void writeAnswersToFile(OffHeapProblemStore problems, String fileName, CommandLineArgs cli)
+            throws IOException {
+        writeLines(problems, false, fileName, cli);
+    }
+
+    private void writeLines(OffHeapProblemStore problems, boolean exercises,
+                            String fileName, CommandLineArgs cli) throws IOException {
+        JfrEvents.FileWriteEvent event = new JfrEvents.FileWriteEvent();
+        event.begin();
+
+        Path path = resolve(fileName);
+        long initialSize = cli.isAppend() && Files.exists(path) ? Files.size(path) : 0;
+        // 题目字节从堆外存储直接流入通道
+        try (WritableByteChannel channel = Channels.newChannel(openOutput(path, cli))) {
+            if (exercises) {
+                problems.writeExercisesTo(channel);
+            } else {
+                problems.writeAnswersTo(channel);
+            }
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path.toString();
+            event.lines = problems.size();
+            event.bytes = Files.size(path) - initialSize;
+            event.gzip = cli.isGzip();
+            event.commit();
+        }
+    }
+
+    // 判分校验文件的记录与题目行一一对应：追加时只在已有校验文件时续写，否则已有题目没有记录，行号会错位
+    private void writeSidecar(OffHeapProblemStore problems, String exerciseFile, CommandLineArgs cli,
+                              boolean appendingToExisting) throws IOException {
+        Path path = GradingSidecar.of(resolve(exerciseFile));
+        if (appendingToExisting) {
+            if (!Files.exists(path)) {
+                if (cli.isSidecar()) {
+                    out.println("警告: 已有题目没有判分校验文件，本次不生成，请以普通模式重新生成题目");
+                }
+                return;
+            }
+            try (WritableByteChannel channel = Files.newByteChannel(path, StandardOpenOption.APPEND)) {
+                problems.writeSidecarTo(channel);
+            }
+            return;
+        }
+        if (!cli.isSidecar()) {
+            // 题目文件已重写，旧的校验文件不再对应
+            Files.deleteIfExists(path);
+            return;
+        }
+        try (WritableByteChannel channel = Files.newByteChannel(path, openOptions(false))) {
+            GradingSidecar.writeHeader(channel);
+            problems.writeSidecarTo(channel);
+        }
+    }
+
+    private void exportProblems(OffHeapProblemStore problems, String fileName, CommandLineArgs cli)
+            throws IOException {
+        JfrEvents.FileWriteEvent event = new JfrEvents.FileWriteEvent();
+        event.begin();
+
+        Path path = resolve(fileName);
+        long initialSize = cli.isAppend() && Files.exists(path) ? Files.size(path) : 0;
+        // 二进制文件头只在新文件开头写一次，追加的记录直接接在后面
+        try (ProblemExporter exporter = new ProblemExporter(openOutput(path, cli), cli.getFormat(), initialSize == 0)) {
+            problems.exportTo(exporter);
+        }
+
+        event.end();
+        if (event.shouldCommit()) {
+            event.path = path.toString();
+            event.lines = problems.size();
+            event.bytes = Files.size(path) - initialSize;
+            event.gzip = cli.isGzip();
+            event.commit();
+        }
+    }
+
+    private static OutputStream openOutput(Path path, CommandLineArgs cli) throws IOException {
+        OutputStream stream = Files.newOutputStream(path, openOptions(cli.isAppend()));
+        if (cli.isGzip()) {
+            // 追加时新写入的 gzip 成员直接拼接在原文件之后，仍是合法的 gzip 流
+            stream = new ParallelGzipOutputStream(stream);
         }
+        return stream;
     }
 
-    private static void writeProblemsToFile(List<Problem> problems) throws IOException {
-        List<String> exercises = problems.stream()
-                .map(Problem::toString)
-                .collect(Collectors.toList());
-        Files.write(Paths.get("Exercises.txt"), exercises);
+    private Path resolve(String fileName) {
+        return workDir.resolve(fileName);
     }
 
-    private static void writeAnswersToFile(List<Problem> problems) throws IOException {
-        List<String> answers = problems.stream()
-                .map(Problem::getAnswer)
-                .collect(Collectors.toList());
-        Files.write(Paths.get("Answers.txt"), answers);
+    private static StandardOpenOption[] openOptions(boolean append) {
+        if (append) {
+            return new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.APPEND};
+        }
+        return new StandardOpenOption[]{StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE};
     }
 
     private static CommandLineArgs parseCommandLine(String[] args) {
@@ -156,6 +486,124 @@ public class Main {
                                     "-a 参数后必须跟答案文件路径");
                         }
                         break;
+                    case "-q":
+                        if (i + 1 < args.length) {
+                            cli.setQuotas(parseQuotas(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-q 参数后必须跟分层配额，如 1:100,2:200,3:200");
+                        }
+                        break;
+                    case "-d":
+                        if (i + 1 < args.length) {
+                            cli.setDifficulty(DifficultyProfile.fromName(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-d 参数后必须跟难度 easy、medium 或 hard");
+                        }
+                        break;
+                    case "-o":
+                        if (i + 1 < args.length) {
+                            cli.setMaxOperators(Integer.parseInt(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-o 参数后必须跟运算符个数上限");
+                        }
+                        break;
+                    case "-t":
+                        if (i + 1 < args.length) {
+                            cli.setTimeBudgetMillis(Long.parseLong(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-t 参数后必须跟时间预算（毫秒）");
+                        }
+                        break;
+                    case "-f":
+                        if (i + 1 < args.length) {
+                            cli.setFormat(ExportFormat.fromName(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-f 参数后必须跟输出格式 txt、ndjson 或 bin");
+                        }
+                        break;
+                    case "--ranked":
+                        cli.setRanked(true);
+                        break;
+                    case "--sidecar":
+                        cli.setSidecar(true);
+                        break;
+                    case "-s":
+                        if (i + 1 < args.length) {
+                            cli.setSeed(Long.parseLong(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-s 参数后必须跟随机种子");
+                        }
+                        break;
+                    case "--integer-answers":
+                        cli.setIntegerAnswers(true);
+                        break;
+                    case "--max-answer":
+                        if (i + 1 < args.length) {
+                            cli.setMaxAnswer(parseAnswer(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "--max-answer 参数后必须跟答案上限，如 10 或 1/2");
+                        }
+                        break;
+                    case "--answers":
+                        if (i + 1 < args.length) {
+                            Set<Fraction> answers = new HashSet<>();
+                            for (String item : args[++i].split(",")) {
+                                answers.add(parseAnswer(item.trim()));
+                            }
+                            cli.setAnswers(answers);
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "--answers 参数后必须跟答案列表，如 1,2,3'1/2");
+                        }
+                        break;
+                    case "--batch":
+                        if (i + 1 < args.length) {
+                            cli.setBatchManifest(args[++i]);
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "--batch 参数后必须跟任务清单文件路径");
+                        }
+                        break;
+                    case "-j":
+                        if (i + 1 < args.length) {
+                            cli.setBatchParallelism(Integer.parseInt(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "-j 参数后必须跟并发任务数");
+                        }
+                        break;
+                    case "--fpp":
+                        if (i + 1 < args.length) {
+                            cli.setFalsePositiveRate(Double.parseDouble(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "--fpp 参数后必须跟布隆过滤器误判率，如 0.01");
+                        }
+                        break;
+                    case "--dedup-mem":
+                        if (i + 1 < args.length) {
+                            cli.setDedupMemoryMb(Integer.parseInt(args[++i]));
+                        } else {
+                            throw new BusinessException(ErrorCode.MISSING_REQUIRED_PARAMETER.getCode(),
+                                    "--dedup-mem 参数后必须跟去重内存预算（MB）");
+                        }
+                        break;
+                    case "--append":
+                        cli.setAppend(true);
+                        break;
+                    case "--gzip":
+                        cli.setGzip(true);
+                        break;
+                    case "--ranges":
+                        cli.setCompressRanges(true);
+                        break;
                     default:
                         throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
                                 "未知参数: " + args[i]);
@@ -163,9 +611,41 @@ public class Main {
             }
         } catch (NumberFormatException e) {
             throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
-                    "参数格式错误，数值参数必须为整数");
+                    "参数格式错误，数值参数必须为数字");
         }
 
         return cli;
     }
-}
\ No newline at end of file
+
+    // 解析答案值，支持整数、真分数 a/b 和带分数 w'a/b
+    private static Fraction parseAnswer(String text) {
+        Fraction value = ExpressionParser.evaluate(text);
+        if (!value.isValid()) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "答案格式错误: " + text);
+        }
+        return value;
+    }
+
+    // 解析形如 1:100,2:200,3:200 的分层配额，数组长度取决于出现的最大运算符个数
+    private static int[] parseQuotas(String spec) {
+        int[] quotas = new int[ProblemGenerator.DEFAULT_MAX_OPERATORS + 1];
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":");
+            if (pair.length != 2) {
+                throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                        "分层配额格式错误，应为 运算符个数:题目数量，如 1:100,2:200,3:200");
+            }
+            int operatorCount = Integer.parseInt(pair[0].trim());
+            if (operatorCount < 1 || operatorCount > ProblemGenerator.MAX_OPERATOR_LIMIT) {
+                throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                        "分层配额的运算符个数必须在 1 到 " + ProblemGenerator.MAX_OPERATOR_LIMIT + " 之间");
+            }
+            if (operatorCount >= quotas.length) {
+                quotas = Arrays.copyOf(quotas, operatorCount + 1);
+            }
+            quotas[operatorCount] = Integer.parseInt(pair[1].trim());
+        }
+        return quotas;
+    }
+}
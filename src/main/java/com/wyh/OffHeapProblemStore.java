@@ -0,0 +1,382 @@
+package com.wyh;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * 堆外题目存储
+ * 题目表达式和答案以 UTF-8 字节追加写入直接内存（direct buffer）分配的大块内存区，
+ * 堆上只保留一个 long 偏移数组，因此 GC 的扫描和复制开销与存储的题目数量无关。
+ * 可以通过轻量视图按需读取，也可以直接把题目行或答案行流式写入通道。
+ *
+ * 直接内存不由 GC 按堆压力回收：只丢弃引用时，内存要等 GC 运行到对应的 Cleaner 才释放，
+ * 总量只受 -XX:MaxDirectMemorySize（默认等于 -Xmx）限制。因此 {@link #close()} 把内存区归还到进程内共享的池中，
+ * 之后的存储按容量复用，守护进程和批处理反复生成时直接内存占用稳定在实际并发需要的水平；
+ * 池中空闲内存区的总量不超过 {@link #MAX_POOLED_BYTES}，超出部分仍交给 GC 释放。
+ *
+ * 记录格式：规范化键哈希(long) 答案分子(int) 答案分母(int) 运算符个数(int)
+ *          表达式长度(int) 表达式字节 答案长度(int) 答案字节
+ * 偏移编码：高位为内存区下标，低 {@value #OFFSET_BITS} 位为区内偏移
+ */
+public class OffHeapProblemStore implements Closeable {
+    private static final int OFFSET_BITS = 32;
+    private static final int INITIAL_ARENA_SIZE = 64 * 1024;
+    private static final int MAX_ARENA_SIZE = 64 * 1024 * 1024;
+    public static final long MAX_POOLED_BYTES = 256L * 1024 * 1024;
+    // 表达式长度字段之前的定长部分
+    private static final int FIXED_BYTES = Long.BYTES + Integer.BYTES * 3;
+    private static final byte[] EXERCISE_SUFFIX = " = ".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    private final List<ByteBuffer> arenas = new ArrayList<>();
+    private ByteBuffer current;
+    private long[] offsets = new long[1024];
+    private int size;
+    private long bytesUsed;
+
+    public OffHeapProblemStore() {
+        newArena(INITIAL_ARENA_SIZE);
+    }
+
+    public void add(Problem problem) {
+        String expression = problem.getExpression();
+        String answer = problem.getAnswer();
+        int expressionBytes = ProblemExporter.utf8Length(expression);
+        int answerBytes = ProblemExporter.utf8Length(answer);
+        int recordBytes = FIXED_BYTES + Integer.BYTES * 2 + expressionBytes + answerBytes;
+        if (recordBytes > MAX_ARENA_SIZE) {
+            throw new IllegalArgumentException("题目过长，无法存入堆外存储");
+        }
+        if (current.remaining() < recordBytes) {
+            // 内存区按倍数增长，少量题目时不会预先占用大块内存
+            newArena(Math.min(MAX_ARENA_SIZE, Math.max(recordBytes, current.capacity() * 2)));
+        }
+
+        if (size == offsets.length) {
+            offsets = Arrays.copyOf(offsets, size * 2);
+        }
+        offsets[size++] = ((long) (arenas.size() - 1) << OFFSET_BITS) | current.position();
+
+        Fraction value = problem.getValue();
+        current.putLong(problem.getCanonicalHash());
+        current.putInt(value.getNumerator());
+        current.putInt(value.getDenominator());
+        current.putInt(problem.getOperatorCount());
+        current.putInt(expressionBytes);
+        encodeUtf8(expression, current);
+        current.putInt(answerBytes);
+        encodeUtf8(answer, current);
+        bytesUsed += recordBytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 已写入的堆外字节数
+     */
+    public long getBytesUsed() {
+        return bytesUsed;
+    }
+
+    /**
+     * 获取第 index 道题目的轻量视图，字符串在访问时才解码
+     */
+    public ProblemView view(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("题目下标越界: " + index);
+        }
+        return new ProblemView(index);
+    }
+
+    public Problem get(int index) {
+        ProblemView view = view(index);
+        return new Problem(view.getExpression(), view.getAnswer(), null,
+                Fraction.of(view.getNumerator(), view.getDenominator()),
+                view.getOperatorCount(), view.getCanonicalHash());
+    }
+
+    /**
+     * 把全部题目交给导出器（NDJSON 或二进制格式），表达式字节直接从堆外内存复制，不解码为字符串
+     */
+    public void exportTo(ProblemExporter exporter) throws IOException {
+        byte[] expression = new byte[256];
+        ByteBuffer[] readers = new ByteBuffer[arenas.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = arenas.get(i).asReadOnlyBuffer();
+        }
+
+        for (int i = 0; i < size; i++) {
+            ByteBuffer arena = readers[(int) (offsets[i] >>> OFFSET_BITS)];
+            int position = positionOf(i);
+            int length = arena.getInt(position + FIXED_BYTES);
+            if (expression.length < length) {
+                expression = new byte[Math.max(length, expression.length * 2)];
+            }
+            arena.clear();
+            arena.position(position + FIXED_BYTES + Integer.BYTES);
+            arena.get(expression, 0, length);
+            exporter.writeRecord(expression, 0, length,
+                    arena.getInt(position + Long.BYTES),
+                    arena.getInt(position + Long.BYTES + Integer.BYTES),
+                    arena.getInt(position + Long.BYTES + Integer.BYTES * 2),
+                    arena.getLong(position));
+        }
+    }
+
+    /**
+     * 把全部题目以 Exercises.txt 的行格式（"表达式 = "）直接写入通道
+     * @return 写入的字节数
+     */
+    public long writeExercisesTo(WritableByteChannel channel) throws IOException {
+        return writeLines(channel, true);
+    }
+
+    /**
+     * 把全部答案以 Answers.txt 的行格式直接写入通道
+     * @return 写入的字节数
+     */
+    public long writeAnswersTo(WritableByteChannel channel) throws IOException {
+        return writeLines(channel, false);
+    }
+
+    /**
+     * 把全部题目的判分校验记录（答案分子、分母、题目行校验和）写入通道，格式见 {@link GradingSidecar}
+     * 校验和直接按堆外存储中的表达式字节加上行尾 " = " 计算，与 {@link #writeExercisesTo} 写出的行一致
+     * @return 写入的字节数
+     */
+    public long writeSidecarTo(WritableByteChannel channel) throws IOException {
+        ByteBuffer staging = ByteBuffer.allocateDirect(GradingSidecar.RECORD_BYTES * 16 * 1024);
+        ByteBuffer[] readers = new ByteBuffer[arenas.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = arenas.get(i).asReadOnlyBuffer();
+        }
+
+        CRC32 crc = new CRC32();
+        long written = 0;
+        for (int i = 0; i < size; i++) {
+            ByteBuffer arena = readers[(int) (offsets[i] >>> OFFSET_BITS)];
+            arena.clear();
+            int position = positionOf(i);
+            int expressionAt = position + FIXED_BYTES;
+            int start = expressionAt + Integer.BYTES;
+            arena.limit(start + arena.getInt(expressionAt)).position(start);
+            crc.reset();
+            crc.update(arena);
+            crc.update(EXERCISE_SUFFIX);
+
+            if (staging.remaining() < GradingSidecar.RECORD_BYTES) {
+                written += drain(channel, staging);
+            }
+            staging.putInt(arena.getInt(position + Long.BYTES));
+            staging.putInt(arena.getInt(position + Long.BYTES + Integer.BYTES));
+            staging.putInt((int) crc.getValue());
+        }
+        written += drain(channel, staging);
+        return written;
+    }
+
+    private long writeLines(WritableByteChannel channel, boolean exercises) throws IOException {
+        ByteBuffer staging = ByteBuffer.allocateDirect(256 * 1024);
+        // 每个内存区一个只读副本，循环中复用，不为每条记录创建对象
+        ByteBuffer[] readers = new ByteBuffer[arenas.size()];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = arenas.get(i).asReadOnlyBuffer();
+        }
+
+        long written = 0;
+        for (int i = 0; i < size; i++) {
+            ByteBuffer arena = readers[(int) (offsets[i] >>> OFFSET_BITS)];
+            arena.clear(); // 上一条记录收窄了 limit，先恢复再按绝对位置读取
+            int position = positionOf(i) + FIXED_BYTES;
+            int expressionBytes = arena.getInt(position);
+            int start = position + Integer.BYTES;
+            int length = expressionBytes;
+            if (!exercises) {
+                start += expressionBytes + Integer.BYTES;
+                length = arena.getInt(position + Integer.BYTES + expressionBytes);
+            }
+
+            int lineBytes = length + LINE_SEPARATOR.length + (exercises ? EXERCISE_SUFFIX.length : 0);
+            if (staging.remaining() < lineBytes) {
+                written += drain(channel, staging);
+                if (staging.capacity() < lineBytes) {
+                    staging = ByteBuffer.allocateDirect(lineBytes);
+                }
+            }
+
+            arena.limit(start + length).position(start);
+            staging.put(arena);
+            if (exercises) {
+                staging.put(EXERCISE_SUFFIX);
+            }
+            staging.put(LINE_SEPARATOR);
+        }
+        written += drain(channel, staging);
+        return written;
+    }
+
+    private static long drain(WritableByteChannel channel, ByteBuffer staging) throws IOException {
+        staging.flip();
+        long written = staging.remaining();
+        while (staging.hasRemaining()) {
+            channel.write(staging);
+        }
+        staging.clear();
+        return written;
+    }
+
+    /**
+     * 把全部内存区归还到共享池供后续存储复用，之后本存储及其视图都不可再使用
+     */
+    @Override
+    public void close() {
+        for (ByteBuffer arena : arenas) {
+            ArenaPool.release(arena);
+        }
+        arenas.clear();
+        current = null;
+        offsets = new long[0];
+        size = 0;
+    }
+
+    /**
+     * 池中空闲内存区的总字节数
+     */
+    public static long getPooledBytes() {
+        return ArenaPool.pooledBytes.get();
+    }
+
+    private void newArena(int capacity) {
+        current = ArenaPool.acquire(capacity);
+        arenas.add(current);
+    }
+
+    private ByteBuffer arenaOf(int index) {
+        return arenas.get((int) (offsets[index] >>> OFFSET_BITS));
+    }
+
+    private int positionOf(int index) {
+        return (int) offsets[index];
+    }
+
+    private String decode(ByteBuffer arena, int start, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = arena.duplicate();
+        slice.position(start);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // 直接编码进内存区，不产生中间 byte[]
+    private static void encodeUtf8(String s, ByteBuffer out) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out.put((byte) c);
+            } else if (c < 0x800) {
+                out.put((byte) (0xC0 | (c >> 6)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out.put((byte) (0xF0 | (cp >> 18)));
+                out.put((byte) (0x80 | ((cp >> 12) & 0x3F)));
+                out.put((byte) (0x80 | ((cp >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (cp & 0x3F)));
+            } else {
+                out.put((byte) (0xE0 | (c >> 12)));
+                out.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                out.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    // 已关闭存储归还的内存区，按容量分组；容量按倍数增长，取值只有少数几种
+    private static final class ArenaPool {
+        private static final Map<Integer, ConcurrentLinkedDeque<ByteBuffer>> free = new ConcurrentHashMap<>();
+        private static final AtomicLong pooledBytes = new AtomicLong();
+
+        static ByteBuffer acquire(int capacity) {
+            ConcurrentLinkedDeque<ByteBuffer> buffers = free.get(capacity);
+            ByteBuffer arena = buffers != null ? buffers.pollFirst() : null;
+            if (arena == null) {
+                return ByteBuffer.allocateDirect(capacity);
+            }
+            pooledBytes.addAndGet(-capacity);
+            arena.clear();
+            return arena;
+        }
+
+        static void release(ByteBuffer arena) {
+            int capacity = arena.capacity();
+            // 先占用额度再入池，并发归还时总量也不会超过上限
+            if (pooledBytes.addAndGet(capacity) > MAX_POOLED_BYTES) {
+                pooledBytes.addAndGet(-capacity);
+                return;
+            }
+            free.computeIfAbsent(capacity, c -> new ConcurrentLinkedDeque<>()).offerFirst(arena);
+        }
+    }
+
+    /**
+     * 题目视图，只保存下标，表达式和答案在访问时从堆外内存解码
+     */
+    public final class ProblemView {
+        private final int index;
+
+        private ProblemView(int index) {
+            this.index = index;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public String getExpression() {
+            ByteBuffer arena = arenaOf(index);
+            int position = positionOf(index) + FIXED_BYTES;
+            return decode(arena, position + Integer.BYTES, arena.getInt(position));
+        }
+
+        public String getAnswer() {
+            ByteBuffer arena = arenaOf(index);
+            int position = positionOf(index) + FIXED_BYTES;
+            int answerAt = position + Integer.BYTES + arena.getInt(position);
+            return decode(arena, answerAt + Integer.BYTES, arena.getInt(answerAt));
+        }
+
+        public long getCanonicalHash() {
+            return arenaOf(index).getLong(positionOf(index));
+        }
+
+        public int getNumerator() {
+            return arenaOf(index).getInt(positionOf(index) + Long.BYTES);
+        }
+
+        public int getDenominator() {
+            return arenaOf(index).getInt(positionOf(index) + Long.BYTES + Integer.BYTES);
+        }
+
+        public int getOperatorCount() {
+            return arenaOf(index).getInt(positionOf(index) + Long.BYTES + Integer.BYTES * 2);
+        }
+
+        @Override
+        public String toString() {
+            return getExpression() + " = ";
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.wyh;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 分块并行 gzip 输出流
+ * 写入的数据按固定大小切成相互独立的块，每块在线程池中压缩成一个完整的 gzip 成员，
+ * 再按原顺序拼接输出。多成员 gzip 是合法的 gzip 流，gunzip 与 {@link java.util.zip.GZIPInputStream} 均可直接读取，
+ * 也因此可以在已有的 .gz 文件末尾直接追加。
+ */
+public class ParallelGzipOutputStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    private final OutputStream out;
+    private final ExecutorService pool;
+    private final int maxInFlight;
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private byte[] block;
+    private int blockLength;
+    private boolean anyBlockWritten;
+    private boolean closed;
+
+    public ParallelGzipOutputStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelGzipOutputStream(OutputStream out, int blockSize, int threads) {
+        if (blockSize <= 0 || threads <= 0) {
+            throw new IllegalArgumentException("块大小和线程数必须为正整数");
+        }
+        this.out = out;
+        this.block = new byte[blockSize];
+        this.maxInFlight = threads * 2; // 限制在途块数量，内存占用与文件大小无关
+        this.pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "gzip-block-compressor");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        ensureOpen();
+        if (blockLength == block.length) {
+            submitBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        ensureOpen();
+        while (len > 0) {
+            if (blockLength == block.length) {
+                submitBlock();
+            }
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /**
+     * 只把已压缩完成的块写出；未满的块保留在缓冲区中，避免产生过多小成员
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+        while (!inFlight.isEmpty() && inFlight.peekFirst().isDone()) {
+            out.write(await(inFlight.pollFirst()));
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            if (blockLength > 0 || !anyBlockWritten) {
+                // 空输出也写出一个空成员，保证结果是合法的 gzip 文件
+                submitBlock();
+            }
+            while (!inFlight.isEmpty()) {
+                out.write(await(inFlight.pollFirst()));
+            }
+            out.flush();
+        } finally {
+            closed = true;
+            pool.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = blockLength;
+        inFlight.addLast(pool.submit(() -> compress(data, length)));
+        anyBlockWritten = true;
+
+        block = new byte[data.length];
+        blockLength = 0;
+
+        while (inFlight.size() >= maxInFlight
+                || (!inFlight.isEmpty() && inFlight.peekFirst().isDone())) {
+            out.write(await(inFlight.pollFirst()));
+        }
+    }
+
+    private static byte[] compress(byte[] data, int length) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, length / 3));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(buffer, 64 * 1024)) {
+            gzip.write(data, 0, length);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] await(Future<byte[]> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("压缩被中断");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException("压缩数据块失败: " + cause.getMessage(), cause);
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("输出流已关闭");
+        }
+    }
+}
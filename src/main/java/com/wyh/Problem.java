@@ -3,10 +3,41 @@ package com.wyh;
 public class Problem {
     private final String expression;
     private final String answer;
+    private final String canonicalKey;
+    // 答案的分数值、运算符个数和规范化键哈希，供 NDJSON / 二进制导出使用
+    private final Fraction value;
+    private final int operatorCount;
+    private final long canonicalHash;
 
     public Problem(String expression, String answer) {
+        this(expression, answer, null);
+    }
+
+    // 未提供数值信息时从文本推导
+    public Problem(String expression, String answer, String canonicalKey) {
+        this(expression, answer, canonicalKey, ExpressionParser.evaluate(answer), countOperators(expression),
+                canonicalKey != null ? CanonicalKeyIndex.hash(canonicalKey) : 0L);
+    }
+
+    public Problem(String expression, String answer, String canonicalKey,
+                   Fraction value, int operatorCount, long canonicalHash) {
         this.expression = expression;
         this.answer = answer;
+        this.canonicalKey = canonicalKey;
+        this.value = value;
+        this.operatorCount = operatorCount;
+        this.canonicalHash = canonicalHash;
+    }
+
+    private static int countOperators(String expression) {
+        int count = 0;
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == '+' || c == '-' || c == '×' || c == '÷') {
+                count++;
+            }
+        }
+        return count;
     }
 
     public String getExpression() {
@@ -17,8 +48,24 @@ public class Problem {
         return answer;
     }
 
+    public String getCanonicalKey() {
+        return canonicalKey;
+    }
+
+    public Fraction getValue() {
+        return value;
+    }
+
+    public int getOperatorCount() {
+        return operatorCount;
+    }
+
+    public long getCanonicalHash() {
+        return canonicalHash;
+    }
+
     @Override
     public String toString() {
         return expression + " = ";
     }
-}
\ No newline at end of file
+}
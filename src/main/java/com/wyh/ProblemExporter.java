@@ -0,0 +1,246 @@
+package com.wyh;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 题目流式导出器，支持 NDJSON 和紧凑二进制两种格式
+ * 每条记录直接编码进内部字节缓冲区，写满后整块写入输出流，不为单条记录创建临时对象。
+ *
+ * NDJSON：每行一个对象，如
+ * {@code {"expression":"3 + 1/2","numerator":7,"denominator":2,"operators":1,"hash":"9e3779b97f4a7c15"}}
+ * 答案以分子/分母给出，下游不需要再解析 3'1/2 形式的带分数。
+ *
+ * 二进制（大端）：文件头为魔数(int) 版本(short)，之后每条记录为
+ * 规范化键哈希(long) 分子(int) 分母(int) 运算符个数(byte) 表达式长度(unsigned short) 表达式 UTF-8 字节
+ */
+public final class ProblemExporter implements Closeable, Flushable {
+    public static final int MAGIC = 0x57594850; // "WYHP"
+    public static final short VERSION = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final byte[] HEX = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] EXPRESSION_FIELD = ascii("{\"expression\":\"");
+    private static final byte[] NUMERATOR_FIELD = ascii("\",\"numerator\":");
+    private static final byte[] DENOMINATOR_FIELD = ascii(",\"denominator\":");
+    private static final byte[] OPERATORS_FIELD = ascii(",\"operators\":");
+    private static final byte[] HASH_FIELD = ascii(",\"hash\":\"");
+    private static final byte[] RECORD_END = ascii("\"}\n");
+    // 单条记录除表达式外的最大字节数（NDJSON 字段名与数字）
+    private static final int RECORD_OVERHEAD = 128;
+
+    private final OutputStream out;
+    private final ExportFormat format;
+    private byte[] buffer = new byte[BUFFER_SIZE];
+    private int position;
+    // 表达式 UTF-8 编码的暂存区，按需扩容后复用
+    private byte[] scratch = new byte[256];
+    private long recordCount;
+
+    /**
+     * @param writeHeader 是否写二进制文件头；追加到已有文件时应为 false
+     */
+    public ProblemExporter(OutputStream out, ExportFormat format, boolean writeHeader) throws IOException {
+        if (format == ExportFormat.TXT) {
+            throw new IllegalArgumentException("TXT 格式按题目和答案两个文件输出，不使用导出器");
+        }
+        this.out = out;
+        this.format = format;
+        if (format == ExportFormat.BINARY && writeHeader) {
+            putInt(MAGIC);
+            putShort(VERSION);
+        }
+    }
+
+    public void write(Problem problem) throws IOException {
+        String expression = problem.getExpression();
+        int length = utf8Length(expression);
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        encodeUtf8(expression, scratch);
+        Fraction value = problem.getValue();
+        writeRecord(scratch, 0, length, value.getNumerator(), value.getDenominator(),
+                problem.getOperatorCount(), problem.getCanonicalHash());
+    }
+
+    /**
+     * 写出一条记录，表达式已是 UTF-8 字节（供堆外存储直接导出）
+     */
+    void writeRecord(byte[] expression, int offset, int length,
+                     int numerator, int denominator, int operatorCount, long canonicalHash) throws IOException {
+        if (length > 0xFFFF) {
+            throw new IllegalArgumentException("表达式过长，无法导出");
+        }
+        // JSON 转义最多把每个字节扩展为 6 个字节
+        int needed = RECORD_OVERHEAD + (format == ExportFormat.NDJSON ? length * 6 : length);
+        if (buffer.length - position < needed) {
+            flushBuffer();
+            if (buffer.length < needed) {
+                buffer = new byte[needed]; // 超长表达式，实际题目不会触发
+            }
+        }
+
+        if (format == ExportFormat.BINARY) {
+            putLong(canonicalHash);
+            putInt(numerator);
+            putInt(denominator);
+            buffer[position++] = (byte) operatorCount;
+            putShort((short) length);
+            System.arraycopy(expression, offset, buffer, position, length);
+            position += length;
+        } else {
+            put(EXPRESSION_FIELD);
+            putJsonEscaped(expression, offset, length);
+            put(NUMERATOR_FIELD);
+            putDecimal(numerator);
+            put(DENOMINATOR_FIELD);
+            putDecimal(denominator);
+            put(OPERATORS_FIELD);
+            putDecimal(operatorCount);
+            put(HASH_FIELD);
+            for (int shift = 60; shift >= 0; shift -= 4) {
+                buffer[position++] = HEX[(int) (canonicalHash >>> shift) & 0xF];
+            }
+            put(RECORD_END);
+        }
+        recordCount++;
+    }
+
+    public long getRecordCount() {
+        return recordCount;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushBuffer();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flushBuffer();
+        } finally {
+            out.close();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    private void put(byte[] bytes) {
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+    }
+
+    private void putShort(short value) {
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putInt(int value) {
+        buffer[position++] = (byte) (value >>> 24);
+        buffer[position++] = (byte) (value >>> 16);
+        buffer[position++] = (byte) (value >>> 8);
+        buffer[position++] = (byte) value;
+    }
+
+    private void putLong(long value) {
+        putInt((int) (value >>> 32));
+        putInt((int) value);
+    }
+
+    // 十进制写入整数，不经过 Integer.toString
+    private void putDecimal(int value) {
+        long v = value;
+        if (v < 0) {
+            buffer[position++] = '-';
+            v = -v;
+        }
+        int digits = 1;
+        for (long t = v; t >= 10; t /= 10) {
+            digits++;
+        }
+        int end = position + digits;
+        for (int i = end - 1; i >= position; i--) {
+            buffer[i] = (byte) ('0' + v % 10);
+            v /= 10;
+        }
+        position = end;
+    }
+
+    // UTF-8 多字节序列原样写入，只转义引号、反斜杠和控制字符
+    private void putJsonEscaped(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            int b = bytes[i] & 0xFF;
+            if (b == '"' || b == '\\') {
+                buffer[position++] = '\\';
+                buffer[position++] = (byte) b;
+            } else if (b < 0x20) {
+                buffer[position++] = '\\';
+                buffer[position++] = 'u';
+                buffer[position++] = '0';
+                buffer[position++] = '0';
+                buffer[position++] = HEX[b >>> 4];
+                buffer[position++] = HEX[b & 0xF];
+            } else {
+                buffer[position++] = (byte) b;
+            }
+        }
+    }
+
+    static int utf8Length(String s) {
+        int length = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+
+    private static void encodeUtf8(String s, byte[] out) {
+        int p = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                out[p++] = (byte) c;
+            } else if (c < 0x800) {
+                out[p++] = (byte) (0xC0 | (c >> 6));
+                out[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                out[p++] = (byte) (0xF0 | (cp >> 18));
+                out[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                out[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                out[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                out[p++] = (byte) (0xE0 | (c >> 12));
+                out[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                out[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static byte[] ascii(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
+    }
+}
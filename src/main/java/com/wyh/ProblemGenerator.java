@@ -1,213 +1,926 @@
 package com.wyh;
 
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ProblemGenerator {
+    // 每道题目默认允许的最大运算符个数
+    public static final int DEFAULT_MAX_OPERATORS = 3;
+    // 可配置的运算符个数上限；二进制导出格式以一个字节记录运算符个数
+    public static final int MAX_OPERATOR_LIMIT = 255;
+
+    // 只缓存运算符个数不超过该值的表达式
+    private static final int CACHED_OPERATOR_LIMIT = DEFAULT_MAX_OPERATORS;
+
+    // 默认缓存条目上限，超过后不再缓存新表达式
+    public static final int DEFAULT_MAX_CACHE_ENTRIES = 500_000;
+
+    // 每道题目平均允许的尝试次数
+    private static final int MAX_ATTEMPTS_PER_PROBLEM = 100;
+
     private final int range;
-    private final Random random;
+    private final int maxOperators;
+    private final int maxCacheEntries;
 
-    // 添加缓存机制
-    private final Map<String, CachedExpression> expressionCache = new HashMap<>();
-    private final Set<String> invalidExpressions = new HashSet<>();
+    // 添加缓存机制；缓存可在多个线程之间共享，随机数与去重状态则属于每次调用
+    private final Map<String, CachedExpression> expressionCache = new ConcurrentHashMap<>();
+    private final Set<String> invalidExpressions = ConcurrentHashMap.newKeySet();
+
+    // 按答案值索引的表达式表，首次指定答案生成时构建
+    private volatile AnswerIndex answerIndex;
+    // 规范化表达式空间的编号器，首次按编号抽样时构建
+    private volatile ExpressionRanker ranker;
 
     // 缓存内部类
     private static class CachedExpression {
         final String infixString;
         final String answer;
+        final Fraction value;
         final String canonicalKey;
+        final long canonicalHash;
         final int operatorCount;
 
         CachedExpression(ExpressionNode expr) {
+            this(expr, expr.evaluate());
+        }
+
+        // 值已由批量求值得到时不再重新计算
+        CachedExpression(ExpressionNode expr, Fraction value) {
             this.infixString = expr.toInfixString();
-            this.answer = expr.evaluate().toString();
+            this.value = value;
+            this.answer = value.toString();
             this.canonicalKey = expr.getCanonicalKey();
+            this.canonicalHash = expr.getCanonicalHash();
             this.operatorCount = expr.getOperatorCount();
         }
+
+        Problem toProblem() {
+            return new Problem(infixString, answer, canonicalKey, value, operatorCount, canonicalHash);
+        }
     }
 
     public ProblemGenerator(int range) {
+        this(range, DEFAULT_MAX_CACHE_ENTRIES);
+    }
+
+    public ProblemGenerator(int range, int maxCacheEntries) {
+        this(range, DEFAULT_MAX_OPERATORS, maxCacheEntries);
+    }
+
+    /**
+     * @param maxOperators 每道题目允许的最大运算符个数，1 到 {@link #MAX_OPERATOR_LIMIT}
+     */
+    public ProblemGenerator(int range, int maxOperators, int maxCacheEntries) {
+        if (maxOperators < 1 || maxOperators > MAX_OPERATOR_LIMIT) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "运算符个数上限必须在 1 到 " + MAX_OPERATOR_LIMIT + " 之间");
+        }
         if (range <= 0) {
             throw new BusinessException(ErrorCode.INVALID_RANGE_PARAMETER.getCode(),
                     "数值范围必须为正整数");
         }
         this.range = range;
-        this.random = new Random();
+        this.maxOperators = maxOperators;
+        this.maxCacheEntries = maxCacheEntries;
     }
 
     public List<Problem> generateProblems(int count) {
+        return generateProblems(count, null);
+    }
+
+    /**
+     * 生成题目，并排除已出现在索引中的题目（用于追加模式）
+     * @param excluded 已生成题目的规范化键索引，可为 null
+     */
+    public List<Problem> generateProblems(int count, CanonicalKeyIndex excluded) {
+        List<Problem> problems = new ArrayList<>();
+        generateProblems(count, excluded, problems::add);
+        return problems;
+    }
+
+    /**
+     * 生成题目并逐道交给 sink，不在内部保留题目列表（例如直接写入堆外存储）
+     * @param excluded 已生成题目的规范化键索引，可为 null
+     * @return 生成的题目数量
+     */
+    public int generateProblems(int count, CanonicalKeyIndex excluded, Consumer<Problem> sink) {
         if (count <= 0) {
             throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
                     "题目数量必须为正整数");
         }
+        try (DuplicateFilter seen = new DuplicateFilter(count)) {
+            return generateProblems(count, excluded, seen, sink);
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.GENERATION_FAILED.getCode(),
+                    "去重段文件读写失败: " + e.getMessage(), e);
+        }
+    }
 
-        Set<String> seenKeys = new HashSet<>();
+    /**
+     * 使用调用方提供的两级去重过滤器生成题目，适用于内存放不下全部题目键的大规模生成
+     * 布隆过滤器未命中的题目立即交给 sink；可能重复的题目攒成批次后统一精确确认
+     * @param seen 本次生成的去重过滤器，生成结束后包含全部已输出题目的键
+     * @return 生成的题目数量
+     */
+    public int generateProblems(int count, CanonicalKeyIndex excluded, DuplicateFilter seen,
+                                Consumer<Problem> sink) throws IOException {
+        GenerationResult result = generate(count, excluded, seen, sink,
+                new JfrEvents.GenerationEvent(), Long.MAX_VALUE, null, ThreadLocalRandom.current());
+        if (!result.isTargetMet()) {
+            throw new BusinessException(ErrorCode.INSUFFICIENT_UNIQUE_PROBLEMS.getCode(),
+                    String.format("无法在合理尝试次数内生成足够的不重复题目（已生成 %d/%d）。请增大范围参数 -r 或减少题目数量 -n",
+                            result.getProduced(), count));
+        }
+        return result.getProduced();
+    }
+
+    /**
+     * 限时生成：在时间预算内尽量生成，到期、被取消或尝试次数用完时返回已生成的部分题目，不抛出数量不足异常
+     * @param timeBudgetMillis 时间预算（毫秒）
+     * @param token 取消令牌，可为 null
+     */
+    public GenerationResult generateWithin(int count, long timeBudgetMillis, CancellationToken token) {
+        JfrEvents.GenerationEvent event = new JfrEvents.GenerationEvent();
+        long deadline = deadlineOf(timeBudgetMillis);
         List<Problem> problems = new ArrayList<>();
-        int attempts = 0;
-        int maxAttempts = count * 100; // 减少尝试次数
+        try (DuplicateFilter seen = new DuplicateFilter(count)) {
+            GenerationResult result = generate(count, null, seen, problems::add, event, deadline, token,
+                    ThreadLocalRandom.current());
+            result.setProblems(problems);
+            return result;
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.GENERATION_FAILED.getCode(),
+                    "去重段文件读写失败: " + e.getMessage(), e);
+        }
+    }
 
-        while (problems.size() < count && attempts < maxAttempts) {
+    /**
+     * 限时生成并逐道交给 sink
+     * 每次尝试前检查截止时间和取消令牌，单次尝试与一次批量去重确认的耗时都有上限，因此返回时间不会明显超出预算
+     */
+    public GenerationResult generateWithin(int count, CanonicalKeyIndex excluded, DuplicateFilter seen,
+                                           Consumer<Problem> sink, long timeBudgetMillis,
+                                           CancellationToken token) throws IOException {
+        JfrEvents.GenerationEvent event = new JfrEvents.GenerationEvent();
+        return generate(count, excluded, seen, sink, event, deadlineOf(timeBudgetMillis), token,
+                ThreadLocalRandom.current());
+    }
+
+    /**
+     * 按种子生成：范围、运算符上限、数量和种子相同时结果（题目及顺序）完全一致
+     * 不读写已验证表达式缓存——缓存命中时返回的题目文本取决于此前的生成历史，结果就不可复现；
+     * 因此不经由 {@link GeneratorRegistry} 获取共享生成器，每次使用不带缓存的独立生成器
+     */
+    public static List<Problem> generateSeeded(int range, int maxOperators, int count, long seed) {
+        if (count <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
+                    "题目数量必须为正整数");
+        }
+        ProblemGenerator isolated = new ProblemGenerator(range, maxOperators, 0);
+        List<Problem> problems = new ArrayList<>(count);
+        try (DuplicateFilter seen = new DuplicateFilter(count)) {
+            GenerationResult result = isolated.generate(count, null, seen, problems::add,
+                    new JfrEvents.GenerationEvent(), Long.MAX_VALUE, null,
+                    new SplittableRandomAdapter(new SplittableRandom(seed)));
+            if (!result.isTargetMet()) {
+                throw new BusinessException(ErrorCode.INSUFFICIENT_UNIQUE_PROBLEMS.getCode(),
+                        String.format("无法在合理尝试次数内生成足够的不重复题目（已生成 %d/%d）。请增大范围参数 -r 或减少题目数量 -n",
+                                result.getProduced(), count));
+            }
+            return problems;
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.GENERATION_FAILED.getCode(),
+                    "去重段文件读写失败: " + e.getMessage(), e);
+        }
+    }
+
+    // 尝试次数上限按 long 计算：题目数量超过约 2147 万时 int 乘积会溢出为负数，生成一道题目都不尝试就返回
+    private static long attemptBudget(long count) {
+        return count > Long.MAX_VALUE / MAX_ATTEMPTS_PER_PROBLEM ? Long.MAX_VALUE : count * MAX_ATTEMPTS_PER_PROBLEM;
+    }
+
+    private static long deadlineOf(long timeBudgetMillis) {
+        if (timeBudgetMillis <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "时间预算必须为正整数（毫秒）");
+        }
+        return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeBudgetMillis);
+    }
+
+    // 生成主循环；deadlineNanos 为 Long.MAX_VALUE 时不限时。
+    // JFR 事件由调用方在计算截止时间之前创建：进程内首次加载事件类有数百毫秒的一次性开销，不应占用时间预算
+    private GenerationResult generate(int count, CanonicalKeyIndex excluded, DuplicateFilter seen,
+                                      Consumer<Problem> sink, JfrEvents.GenerationEvent event,
+                                      long deadlineNanos, CancellationToken token,
+                                      Random random) throws IOException {
+        if (count <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
+                    "题目数量必须为正整数");
+        }
+
+        event.begin();
+        long startNanos = System.nanoTime();
+        boolean timed = deadlineNanos != Long.MAX_VALUE;
+
+        // 运算符不超过 3 个时按块批量求值，更深的表达式仍逐个生成
+        CandidateBatch batch = maxOperators <= CandidateBatch.MAX_OPERATORS
+                ? new CandidateBatch(range, 1, maxOperators) : null;
+        Problem[] pending = new Problem[DuplicateFilter.DEFAULT_BATCH_SIZE];
+        long[] pendingHashes = new long[DuplicateFilter.DEFAULT_BATCH_SIZE];
+        int pendingSize = 0;
+        int produced = 0;
+        long attempts = 0;
+        long maxAttempts = attemptBudget(count);
+        GenerationResult.StopReason stopReason = GenerationResult.StopReason.EXHAUSTED;
+
+        while (produced < count && attempts < maxAttempts) {
+            if (token != null && token.isCancelled()) {
+                stopReason = GenerationResult.StopReason.CANCELLED;
+                break;
+            }
+            if (timed && System.nanoTime() - deadlineNanos >= 0) {
+                stopReason = GenerationResult.StopReason.DEADLINE;
+                break;
+            }
             attempts++;
 
-            CachedExpression cached = generateValidCachedExpression();
-            if (cached == null || !seenKeys.add(cached.canonicalKey)) {
+            CachedExpression cached = batch != null
+                    ? nextBatchedExpression(batch, random) : generateValidCachedExpression(random);
+            if (cached == null) {
+                continue;
+            }
+            if (excluded != null && excluded.contains(cached.canonicalHash)) {
+                continue;
+            }
+
+            Problem problem = cached.toProblem();
+            if (seen.addIfDefinitelyNew(cached.canonicalHash)) {
+                sink.accept(problem);
+                produced++;
                 continue;
             }
 
-            problems.add(new Problem(cached.infixString, cached.answer));
+            pending[pendingSize] = problem;
+            pendingHashes[pendingSize++] = cached.canonicalHash;
+            // 批次已满，或待确认的题目可能已足够补齐数量时统一确认
+            if (pendingSize == pending.length || produced + pendingSize >= count) {
+                produced += flushPending(seen, pending, pendingHashes, pendingSize, count - produced, sink);
+                pendingSize = 0;
+            }
+        }
+        // 提前停止时仍确认已攒下的批次，这些题目已经生成完毕
+        if (pendingSize > 0) {
+            produced += flushPending(seen, pending, pendingHashes, pendingSize, count - produced, sink);
+        }
+        if (produced >= count) {
+            stopReason = GenerationResult.StopReason.COMPLETED;
         }
 
-        if (problems.size() < count) {
+        commitGenerationEvent(event, count, produced, attempts);
+        return new GenerationResult(count, produced, attempts,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos), stopReason);
+    }
+
+    // 精确确认一批可能重复的题目，最多输出 limit 道新题目
+    private static int flushPending(DuplicateFilter seen, Problem[] pending, long[] pendingHashes,
+                                    int pendingSize, int limit, Consumer<Problem> sink) throws IOException {
+        boolean[] isNew = seen.resolve(pendingHashes, pendingSize);
+        int emitted = 0;
+        for (int i = 0; i < pendingSize && emitted < limit; i++) {
+            if (isNew[i]) {
+                sink.accept(pending[i]);
+                emitted++;
+            }
+            pending[i] = null;
+        }
+        return emitted;
+    }
+
+    /**
+     * 指定答案生成：只生成答案满足条件的题目（如答案为整数、答案不超过 10）
+     * 从按答案值索引的表达式表中直接抽取，不经过“生成后过滤”，每道题目的代价与满足条件的答案多少无关；
+     * 运算符个数在有满足条件答案的层之间均匀选择，最多为 {@link AnswerIndex#MAX_INDEXED_OPERATORS} 个
+     * @param answerFilter 答案条件
+     * @param excluded 已生成题目的规范化键索引，可为 null
+     */
+    public int generateProblems(int count, Predicate<Fraction> answerFilter, CanonicalKeyIndex excluded,
+                                Consumer<Problem> sink) {
+        return generateProblems(count, answerFilter, null, excluded, sink);
+    }
+
+    /**
+     * 指定答案生成，答案条件列出了具体的答案值时一并传入
+     * 数值范围较大时索引的层由抽样构建，少见的答案值可能不在索引中：对这些层按答案值直接反解出表达式
+     * （见 {@link AnswerIndex#derive(int, Fraction, Random)}），第 1 层的反解是完整的。
+     * 只有相关的层都已完整覆盖时才报告“没有满足条件的题目”；否则索引中查不到时退回生成后过滤
+     * @param targets 答案条件允许的全部答案值，可为 null（条件不是有限的值列表）
+     */
+    public int generateProblems(int count, Predicate<Fraction> answerFilter, Set<Fraction> targets,
+                                CanonicalKeyIndex excluded, Consumer<Problem> sink) {
+        if (count <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
+                    "题目数量必须为正整数");
+        }
+
+        JfrEvents.GenerationEvent event = new JfrEvents.GenerationEvent();
+        event.begin();
+
+        Random random = ThreadLocalRandom.current();
+        AnswerIndex index = getAnswerIndex();
+        int indexedOperators = index.getMaxOperators();
+        int[][] matches = new int[indexedOperators + 1][];
+        Fraction[][] derivable = new Fraction[indexedOperators + 1][];
+        int[] levels = new int[indexedOperators];
+        int levelCount = 0;
+        // 各层都已完整覆盖时，查不到即确实不存在
+        boolean complete = true;
+        for (int operatorCount = 1; operatorCount <= indexedOperators; operatorCount++) {
+            matches[operatorCount] = index.matching(operatorCount, answerFilter);
+            derivable[operatorCount] = index.isExhaustive(operatorCount)
+                    ? new Fraction[0] : derivableTargets(index, operatorCount, answerFilter, targets, random);
+            if (matches[operatorCount].length > 0 || derivable[operatorCount].length > 0) {
+                levels[levelCount++] = operatorCount;
+            }
+            if (!index.isExhaustive(operatorCount) && !(operatorCount == 1 && targets != null)) {
+                complete = false;
+            }
+        }
+        if (levelCount == 0 && complete) {
+            commitGenerationEvent(event, count, 0, 0);
             throw new BusinessException(ErrorCode.INSUFFICIENT_UNIQUE_PROBLEMS.getCode(),
-                    String.format("无法在合理尝试次数内生成足够的不重复题目（已生成 %d/%d）。请增大范围参数 -r 或减少题目数量 -n",
-                            problems.size(), count));
+                    "当前数值范围内没有答案满足条件的题目，请放宽答案条件或增大范围参数 -r");
+        }
+
+        // 与 generate 相同的去重路径：按规范化键的哈希去重，可能重复的题目攒成批次精确确认
+        Problem[] pending = new Problem[DuplicateFilter.DEFAULT_BATCH_SIZE];
+        long[] pendingHashes = new long[DuplicateFilter.DEFAULT_BATCH_SIZE];
+        int pendingSize = 0;
+        int produced = 0;
+        long attempts = 0;
+        long maxAttempts = attemptBudget(count);
+
+        try (DuplicateFilter seen = new DuplicateFilter(count)) {
+            while (produced < count && attempts < maxAttempts) {
+                attempts++;
+
+                CachedExpression cached;
+                if (levelCount == 0) {
+                    // 抽样构建的索引中查不到，不能断定不存在：退回生成后过滤
+                    cached = generateValidCachedExpression(random);
+                } else {
+                    int operatorCount = levels[random.nextInt(levelCount)];
+                    int[] candidates = matches[operatorCount];
+                    Fraction[] levelTargets = derivable[operatorCount];
+                    boolean derive = levelTargets.length > 0 && (candidates.length == 0 || random.nextBoolean());
+                    ExpressionNode expression = derive
+                            ? index.derive(operatorCount, levelTargets[random.nextInt(levelTargets.length)], random)
+                            : index.expand(operatorCount, candidates[random.nextInt(candidates.length)], random);
+                    // 展开结果按构建时的约束计算，这里再校验一次，防止与表中记录的值不一致
+                    Fraction value = expression.tryEvaluate();
+                    cached = isValidFraction(value) ? new CachedExpression(expression, value) : null;
+                }
+                if (cached == null || !answerFilter.test(cached.value)) {
+                    continue;
+                }
+                if (excluded != null && excluded.contains(cached.canonicalHash)) {
+                    continue;
+                }
+
+                Problem problem = cached.toProblem();
+                if (seen.addIfDefinitelyNew(cached.canonicalHash)) {
+                    sink.accept(problem);
+                    produced++;
+                    continue;
+                }
+
+                pending[pendingSize] = problem;
+                pendingHashes[pendingSize++] = cached.canonicalHash;
+                if (pendingSize == pending.length || produced + pendingSize >= count) {
+                    produced += flushPending(seen, pending, pendingHashes, pendingSize, count - produced, sink);
+                    pendingSize = 0;
+                }
+            }
+            if (pendingSize > 0) {
+                produced += flushPending(seen, pending, pendingHashes, pendingSize, count - produced, sink);
+            }
+        } catch (IOException e) {
+            throw new BusinessException(ErrorCode.GENERATION_FAILED.getCode(),
+                    "去重段文件读写失败: " + e.getMessage(), e);
+        }
+
+        commitGenerationEvent(event, count, produced, attempts);
+        if (produced < count) {
+            throw new BusinessException(ErrorCode.INSUFFICIENT_UNIQUE_PROBLEMS.getCode(),
+                    String.format("无法在合理尝试次数内生成足够的答案满足条件的不重复题目（已生成 %d/%d）。请放宽答案条件或减少题目数量 -n",
+                            produced, count));
+        }
+        return produced;
+    }
+
+    // 抽样构建的层中可以直接反解出的答案值
+    private static Fraction[] derivableTargets(AnswerIndex index, int operatorCount, Predicate<Fraction> answerFilter,
+                                               Set<Fraction> targets, Random random) {
+        if (targets == null) {
+            return new Fraction[0];
+        }
+        List<Fraction> derivable = new ArrayList<>();
+        for (Fraction target : targets) {
+            if (answerFilter.test(target) && index.derive(operatorCount, target, random) != null) {
+                derivable.add(target);
+            }
+        }
+        return derivable.toArray(new Fraction[0]);
+    }
+
+    /**
+     * 获取本范围的答案索引，不存在时构建（并发调用时只构建一次）
+     */
+    public AnswerIndex getAnswerIndex() {
+        AnswerIndex index = answerIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = answerIndex;
+                if (index == null) {
+                    index = new AnswerIndex(range, Math.min(maxOperators, AnswerIndex.MAX_INDEXED_OPERATORS));
+                    answerIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * 按编号抽样生成不重复题目，不需要去重集合
+     * 每个运算符个数一层，各层用独立的伪随机置换依次取出互不相同的编号，反排名得到规范化表达式，
+     * 不满足约束的编号直接跳过；不同编号对应不同的规范化键，生成的题目天然不重复。
+     * 运算符个数在尚未取尽的层之间均匀选择；全部层取尽后题目空间即已穷举，不会在接近上限时因反复碰撞而变慢。
+     * 某一层的空间过大无法编号时退回普通生成——此时随机生成几乎不会碰撞。
+     * @param excluded 已生成题目的规范化键索引，可为 null
+     * @param seed 置换的随机种子，相同种子得到相同的题目序列
+     * @return 生成的题目数量
+     */
+    public int generateDistinct(int count, CanonicalKeyIndex excluded, Consumer<Problem> sink, long seed) {
+        if (count <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
+                    "题目数量必须为正整数");
+        }
+        ExpressionRanker ranker = getRanker();
+        if (!ranker.isRankable(maxOperators)) {
+            return generateProblems(count, excluded, sink);
+        }
+
+        JfrEvents.GenerationEvent event = new JfrEvents.GenerationEvent();
+        event.begin();
+
+        SplittableRandom random = new SplittableRandom(seed);
+        ExpressionRanker.Permutation[] permutations = new ExpressionRanker.Permutation[maxOperators + 1];
+        long[] cursors = new long[maxOperators + 1];
+        int[] active = new int[maxOperators];
+        int activeCount = 0;
+        for (int operatorCount = 1; operatorCount <= maxOperators; operatorCount++) {
+            permutations[operatorCount] = new ExpressionRanker.Permutation(ranker.size(operatorCount), random.split());
+            active[activeCount++] = operatorCount;
+        }
+
+        int produced = 0;
+        long attempts = 0;
+        while (produced < count && activeCount > 0) {
+            attempts++;
+
+            int slot = random.nextInt(activeCount);
+            int operatorCount = active[slot];
+            long rank = permutations[operatorCount].apply(cursors[operatorCount]++);
+            if (cursors[operatorCount] == ranker.size(operatorCount)) {
+                active[slot] = active[--activeCount]; // 该层已取尽
+            }
+
+            ExpressionNode expression = ranker.unrank(operatorCount, rank);
+            if (!satisfiesConstraints(expression)) {
+                continue;
+            }
+            CachedExpression cached = new CachedExpression(expression);
+            if (excluded != null && excluded.contains(cached.canonicalHash)) {
+                continue;
+            }
+
+            sink.accept(cached.toProblem());
+            produced++;
+        }
+
+        commitGenerationEvent(event, count, produced, attempts);
+        if (produced < count) {
+            throw new BusinessException(ErrorCode.INSUFFICIENT_UNIQUE_PROBLEMS.getCode(),
+                    String.format("当前范围内满足约束的不重复题目已全部生成（共 %d 道，需要 %d 道）。请增大范围参数 -r 或减少题目数量 -n",
+                            produced, count));
+        }
+        return produced;
+    }
+
+    /**
+     * 获取本范围和运算符上限的表达式编号器，不存在时构建（并发调用时只构建一次）
+     */
+    public ExpressionRanker getRanker() {
+        ExpressionRanker result = ranker;
+        if (result == null) {
+            synchronized (this) {
+                result = ranker;
+                if (result == null) {
+                    result = new ExpressionRanker(range, maxOperators);
+                    ranker = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 按运算符个数分层生成题目
+     * 每一层有独立的候选池和去重集合，达到配额后即停止抽取该层，输出比例精确等于配额
+     * @param quotas 以运算符个数为下标的配额数组（下标 0 忽略），如 {0, 100, 200, 200}
+     * @param excluded 已生成题目的规范化键索引，可为 null
+     */
+    public List<Problem> generateProblems(int[] quotas, CanonicalKeyIndex excluded) {
+        if (quotas == null || quotas.length > maxOperators + 1) {
+            throw new BusinessException(ErrorCode.INVALID_PARAMETER.getCode(),
+                    "分层配额的运算符个数必须在 1 到 " + maxOperators + " 之间");
         }
 
+        int total = 0;
+        for (int operatorCount = 1; operatorCount < quotas.length; operatorCount++) {
+            if (quotas[operatorCount] < 0) {
+                throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
+                        "分层配额不能为负数");
+            }
+            total += quotas[operatorCount];
+        }
+        if (total <= 0) {
+            throw new BusinessException(ErrorCode.INVALID_COUNT_PARAMETER.getCode(),
+                    "题目数量必须为正整数");
+        }
+
+        JfrEvents.GenerationEvent event = new JfrEvents.GenerationEvent();
+        event.begin();
+
+        Random random = ThreadLocalRandom.current();
+        List<Problem> problems = new ArrayList<>(total);
+        long attempts = 0;
+        for (int operatorCount = 1; operatorCount < quotas.length; operatorCount++) {
+            int quota = quotas[operatorCount];
+            if (quota <= 0) {
+                continue;
+            }
+
+            int before = problems.size();
+            attempts += generateStratum(operatorCount, quota, excluded, problems, random);
+            int produced = problems.size() - before;
+            if (produced < quota) {
+                commitGenerationEvent(event, total, problems.size(), attempts);
+                throw new BusinessException(ErrorCode.INSUFFICIENT_UNIQUE_PROBLEMS.getCode(),
+                        String.format("无法在合理尝试次数内生成足够的 %d 个运算符的不重复题目（已生成 %d/%d）。请增大范围参数 -r 或减少该层配额",
+                                operatorCount, produced, quota));
+            }
+        }
+        commitGenerationEvent(event, total, problems.size(), attempts);
+
+        // 打乱各层顺序，避免题目按难度聚集
+        Collections.shuffle(problems, random);
         return problems;
     }
 
-    private CachedExpression generateValidCachedExpression() {
+    /**
+     * 惰性、无界的题目流，按需生成，可配合 limit 等短路操作使用
+     * 并行时每个分片使用独立的随机数子序列，去重集合在所有分片之间共享，保证全局不重复；
+     * 题目空间耗尽（连续多次尝试都无法得到新题目）时流自然结束
+     */
+    public Stream<Problem> stream() {
+        return stream(ThreadLocalRandom.current().nextLong());
+    }
+
+    public Stream<Problem> stream(long seed) {
+        return StreamSupport.stream(
+                new ProblemSpliterator(new SplittableRandom(seed), ConcurrentHashMap.newKeySet(), Long.MAX_VALUE),
+                false);
+    }
+
+    // 题目流的分片迭代器
+    private final class ProblemSpliterator implements Spliterator<Problem> {
+        private final SplittableRandom source;
+        private final Random random;
+        private final Set<String> seenKeys;
+        private long estimatedSize;
+
+        ProblemSpliterator(SplittableRandom source, Set<String> seenKeys, long estimatedSize) {
+            this.source = source;
+            this.random = new SplittableRandomAdapter(source.split());
+            this.seenKeys = seenKeys;
+            this.estimatedSize = estimatedSize;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Problem> action) {
+            for (int attempt = 0; attempt < MAX_ATTEMPTS_PER_PROBLEM; attempt++) {
+                CachedExpression cached = generateValidCachedExpression(random);
+                if (cached != null && seenKeys.add(cached.canonicalKey)) {
+                    action.accept(cached.toProblem());
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Spliterator<Problem> trySplit() {
+            if (estimatedSize <= 1) {
+                return null;
+            }
+            estimatedSize >>>= 1;
+            return new ProblemSpliterator(source.split(), seenKeys, estimatedSize);
+        }
+
+        @Override
+        public long estimateSize() {
+            return estimatedSize;
+        }
+
+        @Override
+        public int characteristics() {
+            // 不报告 ORDERED：题目随机生成，没有有意义的先后顺序，流因此是无序的，
+            // 并行时 limit / findFirst 不必维护顺序
+            return NONNULL;
+        }
+    }
+
+    // 以 SplittableRandom 为随机源的 Random，使各分片的随机序列相互独立
+    private static final class SplittableRandomAdapter extends Random {
+        private static final long serialVersionUID = 1L;
+
+        private final SplittableRandom source;
+
+        SplittableRandomAdapter(SplittableRandom source) {
+            this.source = source;
+        }
+
+        @Override
+        protected int next(int bits) {
+            return source.nextInt() >>> (32 - bits);
+        }
+    }
+
+    // 生成一层题目，返回尝试次数
+    private long generateStratum(int operatorCount, int quota, CanonicalKeyIndex excluded,
+                                 List<Problem> problems, Random random) {
+        Set<String> seenKeys = new HashSet<>(quota * 4 / 3 + 1);
+        int produced = 0;
+        long attempts = 0;
+        long maxAttempts = attemptBudget(quota);
+        CandidateBatch batch = operatorCount <= CandidateBatch.MAX_OPERATORS
+                ? new CandidateBatch(range, operatorCount, operatorCount) : null;
+
+        while (produced < quota && attempts < maxAttempts) {
+            attempts++;
+
+            CachedExpression cached = batch != null
+                    ? nextBatchedExpression(batch, random) : generateValidCachedExpression(operatorCount, random);
+            // 逐个生成时除数为零会替换右子树，运算符个数可能与目标层不一致
+            if (cached == null || cached.operatorCount != operatorCount) {
+                continue;
+            }
+            if (excluded != null && excluded.contains(cached.canonicalHash)) {
+                continue;
+            }
+            if (!seenKeys.add(cached.canonicalKey)) {
+                continue;
+            }
+
+            problems.add(cached.toProblem());
+            produced++;
+        }
+        return attempts;
+    }
+
+    private void commitGenerationEvent(JfrEvents.GenerationEvent event, int count, int produced, long attempts) {
+        event.end();
+        if (event.shouldCommit()) {
+            event.count = count;
+            event.produced = produced;
+            event.range = range;
+            event.attempts = attempts;
+            event.rejections = attempts - produced;
+            event.commit();
+        }
+    }
+
+    private CachedExpression generateValidCachedExpression(Random random) {
+        return generateValidCachedExpression(1 + random.nextInt(maxOperators), random);
+    }
+
+    private CachedExpression generateValidCachedExpression(int operatorCount, Random random) {
         // 快速尝试3次
         for (int quickAttempt = 0; quickAttempt < 3; quickAttempt++) {
-            ExpressionNode expression = generateOptimizedExpression(1 + random.nextInt(3));
-            String key = expression.getCanonicalKey();
-
-            // 检查已知无效表达式
-            if (invalidExpressions.contains(key)) {
+            ExpressionNode expression = generateOptimizedExpression(operatorCount, random);
+            // 快速验证运算符数量；null 表示某个节点无法满足约束
+            if (expression == null || expression.getOperatorCount() > maxOperators) {
                 continue;
             }
+            // 深层表达式几乎不会重复出现，不查也不写缓存，避免长键占用内存
+            boolean cacheable = expression.getOperatorCount() <= CACHED_OPERATOR_LIMIT;
+            String key = cacheable ? expression.getCanonicalKey() : null;
 
-            // 检查缓存
-            CachedExpression cached = expressionCache.get(key);
-            if (cached != null) {
-                if (isValidCachedExpression(cached)) {
-                    return cached;
-                } else {
-                    invalidExpressions.add(key);
+            if (cacheable) {
+                // 检查已知无效表达式
+                if (invalidExpressions.contains(key)) {
                     continue;
                 }
-            }
 
-            // 新表达式，验证并缓存
-            try {
-                // 快速验证运算符数量
-                if (expression.getOperatorCount() > 3) {
-                    invalidExpressions.add(key);
-                    continue;
+                // 检查缓存
+                CachedExpression cached = expressionCache.get(key);
+                if (cached != null) {
+                    if (isValidCachedExpression(cached)) {
+                        return cached;
+                    } else {
+                        markInvalid(key);
+                        continue;
+                    }
                 }
+            }
 
-                // 验证表达式有效性
-                Fraction result = expression.evaluate();
-                if (isValidFraction(result)) {
-                    CachedExpression newCached = new CachedExpression(expression);
+            // 新表达式，验证并缓存
+            // 验证表达式有效性（不抛异常，除零或溢出时得到无效值）
+            Fraction result = expression.tryEvaluate();
+            if (isValidFraction(result) && (cacheable || parsesToSameValue(expression, result))) {
+                CachedExpression newCached = new CachedExpression(expression);
+                if (cacheable && expressionCache.size() < maxCacheEntries) {
                     expressionCache.put(key, newCached);
-                    return newCached;
-                } else {
-                    invalidExpressions.add(key);
                 }
-            } catch (Exception e) {
-                invalidExpressions.add(key);
+                return newCached;
+            } else if (cacheable) {
+                markInvalid(key);
             }
         }
         return null;
     }
 
-    private ExpressionNode generateOptimizedExpression(int operatorCount) {
-        return generateExpression(operatorCount);
+    // 从批量求值核取下一个通过检查的候选；同一规范化键已缓存时复用缓存中的题目文本
+    private CachedExpression nextBatchedExpression(CandidateBatch batch, Random random) {
+        ExpressionNode expression = batch.next(random);
+        if (expression == null) {
+            return null;
+        }
+        String key = expression.getCanonicalKey();
+        CachedExpression cached = expressionCache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        cached = new CachedExpression(expression, batch.value());
+        if (expressionCache.size() < maxCacheEntries) {
+            expressionCache.put(key, cached);
+        }
+        return cached;
+    }
+
+    private ExpressionNode generateOptimizedExpression(int operatorCount, Random random) {
+        return generateExpression(operatorCount, random);
     }
 
     // 优化原有的 generateExpression 方法
-    private ExpressionNode generateExpression(int operatorCount) {
+    private ExpressionNode generateExpression(int operatorCount, Random random) {
         if (operatorCount == 0) {
-            return new ExpressionNode(generateRandomFraction());
+            return ExpressionNode.leaf(generateRandomFraction(random));
         }
 
-        ExpressionNode.Operator op = randomOperator();
+        ExpressionNode.Operator op = randomOperator(random);
         int leftOps = random.nextInt(operatorCount);
         int rightOps = operatorCount - 1 - leftOps;
 
-        ExpressionNode left = generateExpression(leftOps);
-        ExpressionNode right = generateExpression(rightOps);
+        ExpressionNode left = generateExpression(leftOps, random);
+        ExpressionNode right = generateExpression(rightOps, random);
+        if (left == null || right == null) {
+            return null;
+        }
 
-        return applyOptimizedConstraints(op, left, right);
+        return applyOptimizedConstraints(op, left, right, random);
     }
 
-    // 优化约束应用逻辑
-    private ExpressionNode applyOptimizedConstraints(ExpressionNode.Operator op,
-                                                     ExpressionNode left, ExpressionNode right) {
+    // 优化约束应用逻辑；交换左右操作数后仍不满足约束时返回 null，由调用方丢弃该候选
+    private ExpressionNode applyOptimizedConstraints(ExpressionNode.Operator op, ExpressionNode left,
+                                                     ExpressionNode right, Random random) {
         // 对于减法和除法，进行快速检查
         if (op == ExpressionNode.Operator.SUBTRACT || op == ExpressionNode.Operator.DIVIDE) {
-            try {
-                Fraction leftVal = left.evaluate();
-                Fraction rightVal = right.evaluate();
-
-                switch (op) {
-                    case SUBTRACT:
-                        if (leftVal.compareTo(rightVal) < 0) {
-                            return new ExpressionNode(op, right, left);
-                        }
-                        break;
+            Fraction leftVal = left.tryEvaluate();
+            Fraction rightVal = right.tryEvaluate();
 
-                    case DIVIDE:
-                        if (rightVal.isZero()) {
-                            // 重新生成右节点，但限制次数
-                            right = generateSimpleExpression();
-                        }
-                        // 检查除法结果是否为真分数
-                        Fraction divisionResult = leftVal.divide(rightVal);
-                        if (!divisionResult.isProper() && leftVal.compareTo(rightVal) >= 0) {
-                            return new ExpressionNode(op, right, left);
+            // 如果子表达式无法计算，交换节点重试
+            if (!leftVal.isValid() || !rightVal.isValid()) {
+                return ExpressionNode.of(op, right, left);
+            }
+
+            switch (op) {
+                case SUBTRACT:
+                    if (leftVal.compareTo(rightVal) < 0) {
+                        return ExpressionNode.of(op, right, left);
+                    }
+                    break;
+
+                case DIVIDE:
+                    if (rightVal.isZero()) {
+                        // 重新生成右节点，但限制次数；新右节点作被除数、原左节点作除数，商仍须为真分数
+                        right = generateSimpleExpression(random);
+                        Fraction dividend = right.tryEvaluate();
+                        if (!dividend.isValid() || leftVal.isZero() || dividend.compareTo(leftVal) >= 0) {
+                            return null;
                         }
-                        break;
-                }
-            } catch (Exception e) {
-                // 如果计算出错，交换节点重试
-                return new ExpressionNode(op, right, left);
+                        return ExpressionNode.of(op, right, left);
+                    }
+                    // 两数相等时商为 1，交换后也不是真分数
+                    if (leftVal.compareTo(rightVal) == 0) {
+                        return null;
+                    }
+                    // 检查除法结果是否为真分数
+                    Fraction divisionResult = leftVal.tryDivide(rightVal);
+                    if (!divisionResult.isValid()
+                            || (!divisionResult.isProper() && leftVal.compareTo(rightVal) >= 0)) {
+                        return ExpressionNode.of(op, right, left);
+                    }
+                    break;
             }
         }
 
-        return new ExpressionNode(op, left, right);
+        return ExpressionNode.of(op, left, right);
     }
 
     // 生成简单表达式（避免深度递归）
-    private ExpressionNode generateSimpleExpression() {
+    private ExpressionNode generateSimpleExpression(Random random) {
         if (random.nextDouble() < 0.5) {
-            return new ExpressionNode(generateRandomFraction());
+            return ExpressionNode.leaf(generateRandomFraction(random));
         } else {
-            ExpressionNode.Operator op = randomOperator();
+            ExpressionNode.Operator op = randomOperator(random);
             // 避免除法和减法以减少复杂度
             while (op == ExpressionNode.Operator.DIVIDE || op == ExpressionNode.Operator.SUBTRACT) {
-                op = randomOperator();
+                op = randomOperator(random);
             }
-            return new ExpressionNode(op,
-                    new ExpressionNode(generateRandomFraction()),
-                    new ExpressionNode(generateRandomFraction()));
+            return ExpressionNode.of(op,
+                    ExpressionNode.leaf(generateRandomFraction(random)),
+                    ExpressionNode.leaf(generateRandomFraction(random)));
         }
     }
 
     private boolean isValidCachedExpression(CachedExpression cached) {
-        return cached.operatorCount <= 3;
+        return cached.operatorCount <= maxOperators;
     }
 
-    private boolean isValidFraction(Fraction fraction) {
-        try {
-            return fraction.compareTo(new Fraction(0)) >= 0; // 非负数
-        } catch (Exception e) {
+    // 与 applyOptimizedConstraints 的结果一致：每个减法被减数不小于减数，每个除法除数非零且商为真分数，
+    // 各级结果可计算且非负；深层表达式还要求判分时能复现答案
+    private boolean satisfiesConstraints(ExpressionNode expression) {
+        if (!isValidFraction(expression.tryEvaluate())) {
             return false;
         }
+        ArrayDeque<ExpressionNode> stack = new ArrayDeque<>();
+        stack.push(expression);
+        while (!stack.isEmpty()) {
+            ExpressionNode node = stack.pop();
+            if (node.getType() != ExpressionNode.NodeType.OPERATOR) {
+                continue;
+            }
+            Fraction leftVal = node.getLeft().tryEvaluate();
+            Fraction rightVal = node.getRight().tryEvaluate();
+            if (node.getOperator() == ExpressionNode.Operator.SUBTRACT && leftVal.compareTo(rightVal) < 0) {
+                return false;
+            }
+            if (node.getOperator() == ExpressionNode.Operator.DIVIDE
+                    && (rightVal.isZero() || leftVal.compareTo(rightVal) >= 0)) {
+                return false;
+            }
+            stack.push(node.getLeft());
+            stack.push(node.getRight());
+        }
+        return expression.getOperatorCount() <= CACHED_OPERATOR_LIMIT
+                || parsesToSameValue(expression, expression.tryEvaluate());
+    }
+
+    // 去掉多余括号后，判分时按从左到右的结合顺序重新计算，深层表达式的中间结果可能因此溢出；
+    // 这类题目的答案无法被判分程序复现，直接丢弃
+    private static boolean parsesToSameValue(ExpressionNode expression, Fraction value) {
+        return ExpressionParser.evaluate(expression.toInfixString()).equals(value);
+    }
+
+    private boolean isValidFraction(Fraction fraction) {
+        return fraction.isValid() && fraction.getNumerator() >= 0; // 可计算且非负
     }
 
     // 保留原有验证方法（用于兼容性）
     private boolean validateExpression(ExpressionNode expr) {
-        try {
-            Fraction result = expr.evaluate();
-            return expr.getOperatorCount() <= 3;
-        } catch (Exception e) {
-            return false;
-        }
+        return expr.isValid() && expr.getOperatorCount() <= maxOperators;
     }
 
     // 优化分数生成
-    private Fraction generateRandomFraction() {
+    private Fraction generateRandomFraction(Random random) {
         // 增加整数比例，减少分数运算
         if (random.nextDouble() < 0.8) { // 从0.7提高到0.8
             return new Fraction(random.nextInt(range - 1) + 1);
@@ -218,7 +931,7 @@ public class ProblemGenerator {
         }
     }
 
-    private ExpressionNode.Operator randomOperator() {
+    private ExpressionNode.Operator randomOperator(Random random) {
         ExpressionNode.Operator[] operators = ExpressionNode.Operator.values();
         // 调整运算符概率，减少除法和减法
         if (random.nextDouble() < 0.3) {
@@ -228,7 +941,40 @@ public class ProblemGenerator {
         return operators[random.nextInt(operators.length)];
     }
 
-    // 添加清理方法（可选）
+    private void markInvalid(String key) {
+        if (invalidExpressions.size() < maxCacheEntries) {
+            invalidExpressions.add(key);
+        }
+    }
+
+    public int getRange() {
+        return range;
+    }
+
+    public int getMaxOperators() {
+        return maxOperators;
+    }
+
+    /**
+     * 当前缓存的表达式条目数（有效与无效之和），用于估算内存占用
+     */
+    public int getCacheSize() {
+        return expressionCache.size() + invalidExpressions.size();
+    }
+
+    /**
+     * 答案索引和表达式编号器的条目数（索引的值个数与编号器的叶节点数之和），与表达式缓存分开计入内存预算
+     */
+    public int getIndexSize() {
+        AnswerIndex index = answerIndex;
+        ExpressionRanker currentRanker = ranker;
+        return (index != null ? index.getTotalValueCount() : 0)
+                + (currentRanker != null ? currentRanker.getLeafCount() : 0);
+    }
+
+    /**
+     * 清空表达式缓存；答案索引和编号器构建代价高且大小只由范围决定，保留不动
+     */
     public void clearCache() {
         expressionCache.clear();
         invalidExpressions.clear();